@@ -0,0 +1,52 @@
+package com.cx.plugin.benchmarks;
+
+import com.cx.plugin.utils.CxAppender;
+import org.apache.log4j.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The cost CxAppender adds to every log4j event of the JVM: events of other loggers are filtered out,
+ * OSA agent (org.whitesource) events of a registered build are routed to its build logger.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AppenderBenchmark {
+
+    private static final String ROUTE = "PROJ-PLAN-JOB1-42";
+
+    private final AtomicLong lines = new AtomicLong();
+    private Logger unrelated;
+    private Logger whitesource;
+
+    @Setup
+    public void setUp() {
+        Logger.getRootLogger().removeAllAppenders();
+        CxAppender.register(ROUTE, FakeBamboo.buildLogger(lines));
+        CxAppender.bindCurrentThread(ROUTE);
+        unrelated = Logger.getLogger("com.atlassian.bamboo.build.BuildExecutor");
+        whitesource = Logger.getLogger("org.whitesource.fs.FSAConfiguration");
+    }
+
+    @TearDown
+    public void tearDown() {
+        CxAppender.unbindCurrentThread();
+        CxAppender.unregister(ROUTE);
+    }
+
+    @Benchmark
+    public void filteredEvent() {
+        unrelated.info("Build PROJ-PLAN-JOB1-42 started");
+    }
+
+    @Benchmark
+    public void routedEvent() {
+        whitesource.info("Resolving dependencies of package.json");
+    }
+}
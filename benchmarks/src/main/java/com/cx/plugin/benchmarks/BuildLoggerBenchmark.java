@@ -0,0 +1,43 @@
+package com.cx.plugin.benchmarks;
+
+import com.cx.plugin.utils.CxLoggerAdapter;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CxLoggerAdapter throughput when the scanning threads of a build log at the same time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+public class BuildLoggerBenchmark {
+
+    private final AtomicLong lines = new AtomicLong();
+    private CxLoggerAdapter log;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        log = new CxLoggerAdapter(FakeBamboo.buildLogger(lines));
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        log.close();
+    }
+
+    @Benchmark
+    public void info() {
+        log.info("Scan status: Scanning, 42% complete, 1234 of 2938 files");
+    }
+
+    @Benchmark
+    public void infoFormatted() {
+        log.info("Scan {} status: {}", 1000042L, "Scanning");
+    }
+}
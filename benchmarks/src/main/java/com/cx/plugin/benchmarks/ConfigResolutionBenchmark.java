@@ -0,0 +1,52 @@
+package com.cx.plugin.benchmarks;
+
+import com.atlassian.bamboo.configuration.ConfigurationMap;
+import com.atlassian.bamboo.configuration.ConfigurationMapImpl;
+import com.cx.plugin.utils.CxConfigHelper;
+import com.cx.restclient.configuration.CxScanConfig;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.cx.plugin.utils.CxParam.*;
+
+/**
+ * CxConfigHelper.resolveConfigurationMap for a task using the global server, CxSAST and scan control settings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConfigResolutionBenchmark {
+
+    private ConfigurationMap configMap;
+    private File workDir;
+
+    @Setup
+    public void setUp() {
+        FakeBamboo.installAdministrationConfiguration(FakeBamboo.globalSettings());
+        Map<String, String> task = new HashMap<String, String>();
+        task.put(SERVER_CREDENTIALS_SECTION, GLOBAL_CONFIGURATION_SERVER);
+        task.put(CXSAST_SECTION, GLOBAL_CONFIGURATION_CXSAST);
+        task.put(SCAN_CONTROL_SECTION, GLOBAL_CONFIGURATION_CONTROL);
+        task.put(PROJECT_NAME, "benchmark-project");
+        task.put(PRESET_ID, "36");
+        task.put(PRESET_NAME, "Checkmarx Default");
+        task.put(TEAM_PATH_ID, "1");
+        task.put(TEAM_PATH_NAME, "CxServer");
+        task.put(OSA_ENABLED, OPTION_TRUE);
+        configMap = new ConfigurationMapImpl(task);
+        workDir = new File(System.getProperty("java.io.tmpdir"));
+    }
+
+    @Benchmark
+    public CxScanConfig resolveConfigurationMap() throws Exception {
+        return new CxConfigHelper(NOPLogger.NOP_LOGGER).resolveConfigurationMap(configMap, workDir);
+    }
+}
@@ -0,0 +1,42 @@
+package com.cx.plugin.benchmarks;
+
+import com.cx.plugin.utils.CxCredentialService;
+import com.cx.plugin.utils.CxPluginUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CxPluginUtils.decrypt/isEncrypted on stored (encrypted) and plain passwords, with and without the decrypt cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CredentialBenchmark {
+
+    private String encrypted;
+
+    @Setup
+    public void setUp() {
+        encrypted = CxPluginUtils.encrypt("benchmark-password");
+    }
+
+    @Benchmark
+    public String decryptCached() {
+        return CxPluginUtils.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public String decryptUncached() {
+        CxCredentialService.getInstance().invalidate();
+        return CxPluginUtils.decrypt(encrypted);
+    }
+
+    @Benchmark
+    public boolean isEncryptedPlain() {
+        return CxPluginUtils.isEncrypted("benchmark-password");
+    }
+}
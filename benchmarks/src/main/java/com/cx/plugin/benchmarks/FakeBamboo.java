@@ -0,0 +1,168 @@
+package com.cx.plugin.benchmarks;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+import com.atlassian.bamboo.configuration.AdministrationConfiguration;
+import com.atlassian.spring.container.ContainerContext;
+import com.atlassian.spring.container.ContainerManager;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.cx.plugin.utils.CxParam.*;
+
+/**
+ * Stand-ins for the Bamboo services the benchmarked code looks up, built from dynamic proxies so they do not
+ * depend on the exact interfaces of a Bamboo version. Unhandled methods return null, false or 0.
+ */
+public final class FakeBamboo {
+
+    private FakeBamboo() {
+    }
+
+    /**
+     * A build logger that only counts the lines it receives.
+     */
+    public static BuildLogger buildLogger(final AtomicLong lines) {
+        return proxy(BuildLogger.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().startsWith("add")) {
+                    lines.incrementAndGet();
+                }
+                return defaultValue(method.getReturnType());
+            }
+        });
+    }
+
+    public static Map<String, String> globalSettings() {
+        Map<String, String> settings = new HashMap<String, String>();
+        settings.put(GLOBAL_SERVER_URL, "http://checkmarx.example.com");
+        settings.put(GLOBAL_USER_NAME, "admin");
+        settings.put(GLOBAL_PASSWORD, "secret");
+        settings.put(GLOBAL_FILTER_PATTERN, DEFAULT_FILTER_PATTERNS);
+        settings.put(GLOBAL_FOLDER_EXCLUSION, "node_modules, target, build");
+        settings.put(GLOBAL_SCAN_TIMEOUT_IN_MINUTES, "120");
+        settings.put(GLOBAL_IS_SYNCHRONOUS, OPTION_TRUE);
+        settings.put(GLOBAL_THRESHOLDS_ENABLED, OPTION_TRUE);
+        settings.put(GLOBAL_HIGH_THRESHOLD, "0");
+        settings.put(GLOBAL_MEDIUM_THRESHOLD, "10");
+        settings.put(GLOBAL_LOW_THRESHOLD, "100");
+        settings.put(GLOBAL_CONFIG_VERSION, "1");
+        return settings;
+    }
+
+    /**
+     * Makes ContainerManager serve an administration configuration backed by the given system properties.
+     */
+    public static void installAdministrationConfiguration(final Map<String, String> systemProperties) {
+        final AdministrationConfiguration adminConfig = proxy(AdministrationConfiguration.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getSystemProperty".equals(method.getName())) {
+                    return systemProperties.get((String) args[0]);
+                }
+                if ("setSystemProperty".equals(method.getName())) {
+                    systemProperties.put((String) args[0], (String) args[1]);
+                    return null;
+                }
+                return defaultValue(method.getReturnType());
+            }
+        });
+        final Map<String, Object> components = new HashMap<String, Object>();
+        components.put("administrationConfiguration", adminConfig);
+        components.put("administrationConfigurationAccessor", new AdministrationConfigurationAccessor(adminConfig));
+
+        ContainerManager.getInstance().setContainerContext(proxy(ContainerContext.class, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if ("getComponent".equals(method.getName())) {
+                    return components.get(String.valueOf(args[0]));
+                }
+                if ("isSetup".equals(method.getName())) {
+                    return true;
+                }
+                return defaultValue(method.getReturnType());
+            }
+        }));
+    }
+
+    /**
+     * A proxy answering by method name. Methods without an answer return empty collections, nested stubs for
+     * interface types and null, false or 0 otherwise.
+     */
+    public static <T> T stub(final Class<T> type, final Map<String, ?> answers) {
+        return proxy(type, new InvocationHandler() {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (answers.containsKey(name)) {
+                    return answers.get(name);
+                }
+                if ("toString".equals(name)) {
+                    return type.getSimpleName() + " stub";
+                }
+                if ("hashCode".equals(name)) {
+                    return System.identityHashCode(proxy);
+                }
+                if ("equals".equals(name)) {
+                    return proxy == args[0];
+                }
+                Class<?> returnType = method.getReturnType();
+                if (returnType == List.class || returnType == Collection.class || returnType == Iterable.class) {
+                    return Collections.emptyList();
+                }
+                if (returnType == Set.class) {
+                    return Collections.emptySet();
+                }
+                if (returnType == Map.class) {
+                    return Collections.emptyMap();
+                }
+                if (returnType.isInterface()) {
+                    return stub(returnType, Collections.<String, Object>emptyMap());
+                }
+                return defaultValue(returnType);
+            }
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(FakeBamboo.class.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        }
+        if (type == int.class) {
+            return 0;
+        }
+        if (type == long.class) {
+            return 0L;
+        }
+        return null;
+    }
+
+    /**
+     * Looked up reflectively by its getAdministrationConfiguration method, like Bamboo's own accessor.
+     */
+    public static class AdministrationConfigurationAccessor {
+        private final AdministrationConfiguration adminConfig;
+
+        AdministrationConfigurationAccessor(AdministrationConfiguration adminConfig) {
+            this.adminConfig = adminConfig;
+        }
+
+        public AdministrationConfiguration getAdministrationConfiguration() {
+            return adminConfig;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.cx.plugin.benchmarks;
+
+import com.cx.plugin.dto.CxScanSummary;
+import com.cx.plugin.results.CxSummaryRenderer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.cx.plugin.utils.CxParam.*;
+
+/**
+ * Rendering the result panel of a build with large result counts, first render and cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SummaryRenderingBenchmark {
+
+    private final AtomicLong builds = new AtomicLong();
+    private Map<String, String> customBuildData;
+    private CxScanSummary summary;
+
+    @Setup
+    public void setUp() {
+        customBuildData = new HashMap<String, String>();
+        customBuildData.put(SUMMARY_SAST_ENABLED, OPTION_TRUE);
+        customBuildData.put(SUMMARY_SAST_SCAN_ID, "1000042");
+        customBuildData.put(SUMMARY_SAST_HIGH, "1250");
+        customBuildData.put(SUMMARY_SAST_MEDIUM, "48211");
+        customBuildData.put(SUMMARY_SAST_LOW, "310977");
+        customBuildData.put(SUMMARY_SAST_SCAN_LINK, "http://checkmarx.example.com/CxWebClient/ViewerMain.aspx?scanid=1000042&projectid=17");
+        customBuildData.put(SUMMARY_SAST_PROJECT_LINK, "http://checkmarx.example.com/CxWebClient/portal#/projectState/17/Summary");
+        customBuildData.put(SUMMARY_OSA_ENABLED, OPTION_TRUE);
+        customBuildData.put(SUMMARY_OSA_SCAN_ID, "7c1e3d2a-0f4b-4a53-9d1e-1b2c3d4e5f60");
+        customBuildData.put(SUMMARY_OSA_HIGH, "87");
+        customBuildData.put(SUMMARY_OSA_MEDIUM, "412");
+        customBuildData.put(SUMMARY_OSA_LOW, "1530");
+        customBuildData.put(SUMMARY_THRESHOLD_FAILED, OPTION_TRUE);
+        customBuildData.put(SUMMARY_THRESHOLD_DESCRIPTION, "CxSAST high severity results are above threshold. Results: 1250. Threshold: 0");
+        summary = CxScanSummary.fromCustomData(customBuildData);
+    }
+
+    @Benchmark
+    public String render() {
+        return CxSummaryRenderer.getInstance().render(summary);
+    }
+
+    @Benchmark
+    public String panelFirstView() {
+        return CxSummaryRenderer.getInstance().getHtml("PROJ-PLAN-JOB1-" + builds.incrementAndGet(), customBuildData);
+    }
+
+    @Benchmark
+    public String panelCachedView() {
+        return CxSummaryRenderer.getInstance().getHtml("PROJ-PLAN-JOB1-1", customBuildData);
+    }
+}
@@ -0,0 +1,244 @@
+package com.cx.plugin.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An embedded stand-in for the Checkmarx REST API used by CxShragaClient: login, teams and presets, projects,
+ * source upload, SAST scans (queue, status, statistics), reports and OSA scans.
+ * <p>
+ * Every request is delayed by {@link Settings#latencyMillis} and fails with HTTP 500 with probability
+ * {@link Settings#failureRate}. A scan stays queued for {@link Settings#queueMillis}, then scans for
+ * {@link Settings#scanMillis}. Responses carry only the fields the client reads.
+ */
+public class CxStubServer {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final Pattern ID = Pattern.compile("/(\\d+|[0-9a-f\\-]{36})(?:/|$)");
+
+    private final Settings settings;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Random random = new Random();
+    private final AtomicLong ids = new AtomicLong(1000000);
+    private final Map<String, Long> scanCreated = new ConcurrentHashMap<String, Long>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public CxStubServer(Settings settings) throws IOException {
+        this.settings = settings;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", settings.port), 256);
+        this.executor = Executors.newFixedThreadPool(settings.serverThreads);
+        server.setExecutor(executor);
+        server.createContext("/cxrestapi", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    dispatch(exchange);
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    private void dispatch(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        drain(exchange.getRequestBody());
+        sleep(settings.latencyMillis);
+        if (settings.failureRate > 0 && random.nextDouble() < settings.failureRate) {
+            failures.incrementAndGet();
+            respond(exchange, 500, "{\"messageCode\":500,\"messageDetails\":\"Injected failure\"}");
+            return;
+        }
+
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath().substring("/cxrestapi".length());
+
+        if (path.startsWith("/auth/identity/connect/token")) {
+            respond(exchange, 200, "{\"access_token\":\"" + UUID.randomUUID() + "\",\"token_type\":\"Bearer\",\"expires_in\":86400}");
+        } else if (path.startsWith("/auth/teams")) {
+            respond(exchange, 200, "[{\"id\":\"1\",\"fullName\":\"\\\\CxServer\"},{\"id\":\"2\",\"fullName\":\"\\\\CxServer\\\\SP\\\\Company\\\\Users\"}]");
+        } else if (path.startsWith("/sast/presets")) {
+            respond(exchange, 200, "[{\"id\":36,\"name\":\"Checkmarx Default\",\"ownerName\":\"\"},{\"id\":1,\"name\":\"All\",\"ownerName\":\"\"}]");
+        } else if (path.startsWith("/sast/engineConfigurations")) {
+            respond(exchange, 200, "[{\"id\":1,\"name\":\"Default Configuration\"}]");
+        } else if (path.startsWith("/projects") && path.contains("/sourceCode/attachments")) {
+            sleep(settings.uploadMillis);
+            respond(exchange, 204, null);
+        } else if (path.startsWith("/projects") && path.contains("/sourceCode/excludeSettings")) {
+            respond(exchange, 200, "{\"projectId\":17,\"excludeFoldersPattern\":\"\",\"excludeFilesPattern\":\"\"}");
+        } else if (path.startsWith("/projects") && "POST".equals(method)) {
+            respond(exchange, 201, "{\"id\":" + ids.incrementAndGet() + "}");
+        } else if (path.startsWith("/projects")) {
+            respond(exchange, 200, "[{\"id\":17,\"teamId\":\"1\",\"name\":\"load-test\",\"isPublic\":true}]");
+        } else if (path.startsWith("/sast/scanSettings")) {
+            respond(exchange, 200, "{\"id\":1,\"project\":{\"id\":17},\"preset\":{\"id\":36},\"engineConfiguration\":{\"id\":1}}");
+        } else if (path.equals("/sast/scans") && "POST".equals(method)) {
+            String id = String.valueOf(ids.incrementAndGet());
+            scanCreated.put(id, System.currentTimeMillis());
+            respond(exchange, 201, "{\"id\":" + id + "}");
+        } else if (path.startsWith("/sast/scans") && path.endsWith("/resultsStatistics")) {
+            respond(exchange, 200, "{\"highSeverity\":3,\"mediumSeverity\":42,\"lowSeverity\":120,\"infoSeverity\":7}");
+        } else if (path.startsWith("/sast/scansQueue")) {
+            String stage = stage(idOf(path));
+            respond(exchange, 200, "{\"id\":" + idOf(path) + ",\"stage\":{\"id\":1,\"value\":\"" + stage + "\"},\"totalPercent\":" +
+                    percent(idOf(path)) + ",\"stageDetails\":\"\"}");
+        } else if (path.startsWith("/sast/scans")) {
+            String id = idOf(path);
+            String stage = stage(id);
+            boolean finished = "Finished".equals(stage);
+            respond(exchange, 200, "{\"id\":" + id + ",\"project\":{\"id\":17,\"name\":\"load-test\"},\"status\":{\"id\":" +
+                    (finished ? 7 : 3) + ",\"name\":\"" + stage + "\"},\"scanType\":{\"id\":1,\"value\":\"Regular\"},\"isIncremental\":false}");
+        } else if (path.equals("/reports/sastScan") && "POST".equals(method)) {
+            respond(exchange, 202, "{\"reportId\":" + ids.incrementAndGet() + "}");
+        } else if (path.startsWith("/reports/sastScan") && path.endsWith("/status")) {
+            respond(exchange, 200, "{\"status\":{\"id\":2,\"value\":\"Created\"}}");
+        } else if (path.startsWith("/reports/sastScan")) {
+            respond(exchange, 200, "<?xml version=\"1.0\" encoding=\"utf-8\"?><CxXMLResults ScanId=\"" + idOf(path) +
+                    "\" ProjectName=\"load-test\" LinesOfCodeScanned=\"125000\" FilesScanned=\"2400\"></CxXMLResults>");
+        } else if (path.startsWith("/osa/inventory")) {
+            String id = UUID.randomUUID().toString();
+            scanCreated.put(id, System.currentTimeMillis());
+            respond(exchange, 201, "{\"scanId\":\"" + id + "\"}");
+        } else if (path.startsWith("/osa/scans")) {
+            String id = idOf(path);
+            boolean finished = "Finished".equals(stage(id));
+            respond(exchange, 200, "{\"id\":\"" + id + "\",\"state\":{\"id\":" + (finished ? 2 : 1) + ",\"name\":\"" +
+                    (finished ? "Succeeded" : "InProgress") + "\"}}");
+        } else if (path.startsWith("/osa/reports")) {
+            respond(exchange, 200, "{\"totalLibraries\":120,\"highVulnerabilityLibraries\":2,\"mediumVulnerabilityLibraries\":5," +
+                    "\"lowVulnerabilityLibraries\":9,\"nonVulnerableLibraries\":104,\"totalHighVulnerabilities\":4," +
+                    "\"totalMediumVulnerabilities\":11,\"totalLowVulnerabilities\":20,\"vulnerabilityScore\":\"High\"}");
+        } else if (path.startsWith("/osa/libraries") || path.startsWith("/osa/vulnerabilities")) {
+            respond(exchange, 200, "[]");
+        } else {
+            respond(exchange, 404, "{\"messageCode\":404,\"messageDetails\":\"Not stubbed: " + method + " " + path + "\"}");
+        }
+    }
+
+    private String stage(String scanId) {
+        Long created = scanCreated.get(scanId);
+        long elapsed = created == null ? Long.MAX_VALUE : System.currentTimeMillis() - created;
+        if (elapsed < settings.queueMillis) {
+            return "Queued";
+        }
+        if (elapsed < settings.queueMillis + settings.scanMillis) {
+            return "Scanning";
+        }
+        return "Finished";
+    }
+
+    private long percent(String scanId) {
+        Long created = scanCreated.get(scanId);
+        if (created == null || settings.scanMillis == 0) {
+            return 100;
+        }
+        long scanning = System.currentTimeMillis() - created - settings.queueMillis;
+        return Math.max(0, Math.min(100, scanning * 100 / settings.scanMillis));
+    }
+
+    private static String idOf(String path) {
+        Matcher m = ID.matcher(path);
+        return m.find() ? m.group(1) : "";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] bytes = body.getBytes(UTF8);
+        exchange.getResponseHeaders().set("Content-Type", body.startsWith("<") ? "application/xml" : "application/json;charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[64 * 1024];
+        while (in.read(buffer) != -1) {
+            //uploads are discarded
+        }
+    }
+
+    private static void sleep(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static class Settings {
+        int port = 0;
+        int serverThreads = 32;
+        long latencyMillis = 20;
+        long uploadMillis = 200;
+        long queueMillis = 2000;
+        long scanMillis = 10000;
+        double failureRate = 0;
+
+        /**
+         * Reads -Dcx.stub.* system properties, e.g. -Dcx.stub.latencyMillis=50 -Dcx.stub.failureRate=0.01
+         */
+        public static Settings fromSystemProperties() {
+            Settings settings = new Settings();
+            settings.port = Integer.getInteger("cx.stub.port", settings.port);
+            settings.serverThreads = Integer.getInteger("cx.stub.serverThreads", settings.serverThreads);
+            settings.latencyMillis = Long.getLong("cx.stub.latencyMillis", settings.latencyMillis);
+            settings.uploadMillis = Long.getLong("cx.stub.uploadMillis", settings.uploadMillis);
+            settings.queueMillis = Long.getLong("cx.stub.queueMillis", settings.queueMillis);
+            settings.scanMillis = Long.getLong("cx.stub.scanMillis", settings.scanMillis);
+            settings.failureRate = Double.parseDouble(System.getProperty("cx.stub.failureRate", String.valueOf(settings.failureRate)));
+            return settings;
+        }
+
+        @Override
+        public String toString() {
+            return "latency " + latencyMillis + " ms, upload " + uploadMillis + " ms, queue " + queueMillis + " ms, scan " +
+                    scanMillis + " ms, failure rate " + failureRate;
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package com.cx.plugin.loadtest;
+
+import com.atlassian.bamboo.configuration.ConfigurationMapImpl;
+import com.atlassian.bamboo.task.TaskContext;
+import com.atlassian.bamboo.task.TaskResult;
+import com.atlassian.bamboo.task.TaskState;
+import com.atlassian.bamboo.v2.build.BuildContext;
+import com.cx.plugin.benchmarks.FakeBamboo;
+import com.cx.plugin.task.CheckmarxTask;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.cx.plugin.utils.CxParam.*;
+
+/**
+ * Runs CheckmarxTask.execute for N builds, C at a time, against a {@link CxStubServer}, the way an agent with
+ * C executors would, and reports throughput, build duration percentiles, threads and heap of this JVM.
+ * <p>
+ * Settings are system properties: cx.load.builds, cx.load.concurrency, cx.load.projects (distinct projects the
+ * builds scan), cx.load.osa and cx.load.maxConcurrentScans, plus the cx.stub.* settings of the stub server.
+ */
+public class LoadHarness {
+
+    public static void main(String[] args) throws Exception {
+        int builds = Integer.getInteger("cx.load.builds", 50);
+        int concurrency = Integer.getInteger("cx.load.concurrency", 10);
+        int projects = Integer.getInteger("cx.load.projects", 5);
+        final boolean osa = Boolean.getBoolean("cx.load.osa");
+        int maxConcurrentScans = Integer.getInteger("cx.load.maxConcurrentScans", 0);
+
+        CxStubServer.Settings stubSettings = CxStubServer.Settings.fromSystemProperties();
+        CxStubServer stub = new CxStubServer(stubSettings);
+        stub.start();
+
+        Map<String, String> global = FakeBamboo.globalSettings();
+        global.put(GLOBAL_SERVER_URL, stub.getUrl());
+        global.put(GLOBAL_SCAN_TIMEOUT_IN_MINUTES, "30");
+        global.put(GLOBAL_MAX_CONCURRENT_SCANS, String.valueOf(maxConcurrentScans));
+        FakeBamboo.installAdministrationConfiguration(global);
+
+        File root = new File(System.getProperty("java.io.tmpdir"), "cx-load-" + System.currentTimeMillis());
+        System.out.println("Stub server " + stub.getUrl() + " (" + stubSettings + ")");
+        System.out.println(builds + " builds, " + concurrency + " concurrent, " + projects + " projects, OSA " + (osa ? "on" : "off"));
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        threads.resetPeakThreadCount();
+        HeapSampler heap = new HeapSampler(memory);
+        heap.start();
+
+        ExecutorService agents = Executors.newFixedThreadPool(concurrency);
+        List<Future<Long>> results = new ArrayList<Future<Long>>();
+        final AtomicLong failed = new AtomicLong();
+        final AtomicLong logLines = new AtomicLong();
+        long start = System.nanoTime();
+        for (int i = 0; i < builds; i++) {
+            final int build = i;
+            final File workDir = sourceTree(new File(root, "build-" + build));
+            final String project = "load-test-" + (build % projects);
+            results.add(agents.submit(new Callable<Long>() {
+                @Override
+                public Long call() throws Exception {
+                    long buildStart = System.nanoTime();
+                    TaskResult result = new CheckmarxTask().execute(taskContext(project, build, workDir, osa, logLines));
+                    if (result.getTaskState() != TaskState.SUCCESS) {
+                        failed.incrementAndGet();
+                    }
+                    return System.nanoTime() - buildStart;
+                }
+            }));
+        }
+
+        long[] durations = new long[builds];
+        for (int i = 0; i < builds; i++) {
+            try {
+                durations[i] = results.get(i).get();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                durations[i] = -1;
+                System.out.println("Build " + (i + 1) + " threw: " + e.getCause());
+            }
+        }
+        long wallNanos = System.nanoTime() - start;
+        agents.shutdown();
+        heap.stop();
+        stub.stop();
+
+        long[] finished = finished(durations);
+        System.out.println();
+        System.out.println("Builds:       " + builds + " (" + failed.get() + " failed or threw)");
+        System.out.println(String.format("Throughput:   %.2f builds/min", builds * 60.0 / (wallNanos / 1e9)));
+        if (finished.length > 0) {
+            System.out.println(String.format("Duration:     p50 %d ms, p90 %d ms, p99 %d ms, max %d ms", percentile(finished, 50),
+                    percentile(finished, 90), percentile(finished, 99), percentile(finished, 100)));
+        }
+        System.out.println("Threads:      peak " + threads.getPeakThreadCount() + ", now " + threads.getThreadCount());
+        System.out.println(String.format("Heap:         peak %.1f MB, now %.1f MB", heap.getPeak() / 1048576.0,
+                memory.getHeapMemoryUsage().getUsed() / 1048576.0));
+        System.out.println("Log lines:    " + logLines.get());
+        System.out.println("Stub server:  " + stub.getRequests() + " requests, " + stub.getFailures() + " injected failures");
+        System.exit(0);
+    }
+
+    private static TaskContext taskContext(String project, int build, File workDir, boolean osa, AtomicLong logLines) {
+        String planKey = "LOAD-PLAN" + build % 10 + "-JOB1";
+        String buildResultKey = planKey + "-" + (build + 1);
+
+        Map<String, String> task = new HashMap<String, String>();
+        task.put(SERVER_CREDENTIALS_SECTION, GLOBAL_CONFIGURATION_SERVER);
+        task.put(CXSAST_SECTION, GLOBAL_CONFIGURATION_CXSAST);
+        task.put(SCAN_CONTROL_SECTION, GLOBAL_CONFIGURATION_CONTROL);
+        task.put(PROJECT_NAME, project);
+        task.put(PRESET_ID, "36");
+        task.put(PRESET_NAME, "Checkmarx Default");
+        task.put(TEAM_PATH_ID, "1");
+        task.put(TEAM_PATH_NAME, "\\CxServer");
+        task.put(OSA_ENABLED, String.valueOf(osa));
+
+        Map<String, Object> buildResult = new HashMap<String, Object>();
+        buildResult.put("getCustomBuildData", Collections.synchronizedMap(new HashMap<String, String>()));
+
+        Map<String, Object> buildContext = new HashMap<String, Object>();
+        buildContext.put("getBuildResultKey", buildResultKey);
+        buildContext.put("getBuildKey", planKey(planKey));
+        buildContext.put("getBuildResult", FakeBamboo.stub(returnType(BuildContext.class, "getBuildResult"), buildResult));
+
+        Map<String, Object> context = new HashMap<String, Object>();
+        context.put("getBuildContext", FakeBamboo.stub(BuildContext.class, buildContext));
+        context.put("getBuildLogger", FakeBamboo.buildLogger(logLines));
+        context.put("getConfigurationMap", new ConfigurationMapImpl(task));
+        context.put("getWorkingDirectory", workDir);
+        context.put("getRootDirectory", workDir);
+        context.put("getId", (long) build);
+        return FakeBamboo.stub(TaskContext.class, context);
+    }
+
+    /**
+     * The plan key as the BuildContext of the running Bamboo version returns it, a String or a PlanKey.
+     */
+    private static Object planKey(String key) {
+        Class<?> type = returnType(BuildContext.class, "getBuildKey");
+        if (type == String.class) {
+            return key;
+        }
+        Map<String, Object> answers = new HashMap<String, Object>();
+        answers.put("getKey", key);
+        answers.put("toString", key);
+        return FakeBamboo.stub(type, answers);
+    }
+
+    private static Class<?> returnType(Class<?> type, String method) {
+        for (Method m : type.getMethods()) {
+            if (m.getName().equals(method) && m.getParameterTypes().length == 0) {
+                return m.getReturnType();
+            }
+        }
+        throw new IllegalStateException(type.getName() + " has no method " + method);
+    }
+
+    /**
+     * A small source tree per build: the stub discards uploads, so only the packaging cost on the agent matters.
+     */
+    private static File sourceTree(File dir) throws IOException {
+        File src = new File(dir, "src/main/java/com/example");
+        if (!src.mkdirs()) {
+            throw new IOException("Failed to create " + src);
+        }
+        byte[] content = new byte[8 * 1024];
+        Arrays.fill(content, (byte) 'x');
+        for (int i = 0; i < 50; i++) {
+            OutputStream out = new FileOutputStream(new File(src, "Source" + i + ".java"));
+            try {
+                out.write(content);
+            } finally {
+                out.close();
+            }
+        }
+        return dir;
+    }
+
+    private static long[] finished(long[] durations) {
+        long[] finished = new long[durations.length];
+        int count = 0;
+        for (long duration : durations) {
+            if (duration >= 0) {
+                finished[count++] = TimeUnit.NANOSECONDS.toMillis(duration);
+            }
+        }
+        finished = Arrays.copyOf(finished, count);
+        Arrays.sort(finished);
+        return finished;
+    }
+
+    private static long percentile(long[] sorted, int percentile) {
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static class HeapSampler implements Runnable {
+        private final MemoryMXBean memory;
+        private volatile boolean running = true;
+        private volatile long peak;
+        private Thread thread;
+
+        HeapSampler(MemoryMXBean memory) {
+            this.memory = memory;
+        }
+
+        void start() {
+            thread = new Thread(this, "cx-load-heap-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+        }
+
+        long getPeak() {
+            return peak;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed());
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.cx.plugin.client;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Agent wide circuit breakers, one per Checkmarx server URL.
+ * <p>
+ * After {@link #FAILURE_THRESHOLD} consecutive failed calls to a server its circuit opens: for the next
+ * {@link #OPEN_SECONDS} seconds builds do not contact the server at all. Then a single build is let through as a
+ * probe (half open); its first successful call closes the circuit, a failure opens it again. Builds of all plans
+ * share the circuits, so an outage noticed by one build spares the others the wait for timeouts.
+ */
+public class CxCircuitBreaker {
+
+    static final int FAILURE_THRESHOLD = 5;
+    static final long OPEN_SECONDS = 60;
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private static final CxCircuitBreaker INSTANCE = new CxCircuitBreaker();
+
+    private final ConcurrentMap<String, Circuit> circuits = new ConcurrentHashMap<String, Circuit>();
+
+    private CxCircuitBreaker() {
+    }
+
+    public static CxCircuitBreaker getInstance() {
+        return INSTANCE;
+    }
+
+    public Circuit circuit(String url) {
+        String key = url == null ? "" : url.replaceAll("/+$", "").toLowerCase();
+        Circuit circuit = circuits.get(key);
+        if (circuit == null) {
+            Circuit created = new Circuit(key);
+            circuit = circuits.putIfAbsent(key, created);
+            if (circuit == null) {
+                circuit = created;
+            }
+        }
+        return circuit;
+    }
+
+    /**
+     * The state of one server. All methods are thread safe.
+     */
+    public static class Circuit {
+        private final String url;
+        private final long openNanos;
+        private State state = State.CLOSED;
+        private int failures = 0;
+        private long openedAt;
+        private long probeStartedAt;
+
+        Circuit(String url) {
+            this(url, TimeUnit.SECONDS.toNanos(OPEN_SECONDS));
+        }
+
+        /**
+         * @param openNanos how long the circuit stays open, and how long a probe may take
+         */
+        Circuit(String url, long openNanos) {
+            this.url = url;
+            this.openNanos = openNanos;
+        }
+
+        /**
+         * @return true when a call to the server may be made now; in half open state only the probe may call
+         */
+        public synchronized boolean allowRequest() {
+            long now = System.nanoTime();
+            switch (state) {
+                case CLOSED:
+                    return true;
+                case OPEN:
+                    if (now - openedAt < openNanos) {
+                        return false;
+                    }
+                    state = State.HALF_OPEN;
+                    probeStartedAt = now;
+                    return true;
+                default:
+                    //a probe that never reported back (its build was killed) does not keep the circuit half open
+                    if (now - probeStartedAt < openNanos) {
+                        return false;
+                    }
+                    probeStartedAt = now;
+                    return true;
+            }
+        }
+
+        /**
+         * @return true when the call closed a circuit that was not closed
+         */
+        public synchronized boolean onSuccess() {
+            boolean closed = state != State.CLOSED;
+            state = State.CLOSED;
+            failures = 0;
+            return closed;
+        }
+
+        /**
+         * @return true when the failure opened the circuit
+         */
+        public synchronized boolean onFailure() {
+            failures++;
+            if (state == State.HALF_OPEN || state == State.CLOSED && failures >= FAILURE_THRESHOLD) {
+                state = State.OPEN;
+                openedAt = System.nanoTime();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * @return true while calls are refused, without becoming the probe of the server
+         */
+        public synchronized boolean isRejecting() {
+            long now = System.nanoTime();
+            return state == State.OPEN && now - openedAt < openNanos || state == State.HALF_OPEN && now - probeStartedAt < openNanos;
+        }
+
+        public synchronized State getState() {
+            return state;
+        }
+
+        public synchronized int getFailures() {
+            return failures;
+        }
+
+        /**
+         * @return the seconds until the next probe is let through, 0 when the circuit is not open
+         */
+        public synchronized long getSecondsUntilProbe() {
+            if (state != State.OPEN) {
+                return 0;
+            }
+            return Math.max(0, TimeUnit.NANOSECONDS.toSeconds(openNanos - (System.nanoTime() - openedAt)));
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        @Override
+        public synchronized String toString() {
+            switch (state) {
+                case OPEN:
+                    return "open after " + failures + " consecutive failures, next attempt in " + getSecondsUntilProbe() + " seconds";
+                case HALF_OPEN:
+                    return "half open, a build is probing the server";
+                default:
+                    return failures == 0 ? "closed" : "closed, " + failures + " consecutive failures";
+            }
+        }
+    }
+
+    /**
+     * Thrown instead of calling a server whose circuit is open.
+     */
+    public static class OpenException extends IOException {
+        public OpenException(Circuit circuit) {
+            super("The Checkmarx server " + circuit.getUrl() + " is unavailable (circuit " + circuit + ")");
+        }
+    }
+}
@@ -0,0 +1,384 @@
+package com.cx.plugin.client;
+
+import com.cx.restclient.CxShragaClient;
+import com.cx.restclient.configuration.CxScanConfig;
+import com.cx.restclient.exception.CxClientException;
+import com.cx.restclient.httpClient.CxHttpClient;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.ssl.NoopHostnameVerifier;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.conn.ssl.TrustStrategy;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.ssl.SSLContexts;
+import org.slf4j.Logger;
+
+import javax.xml.bind.DatatypeConverter;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.cx.plugin.utils.CxPluginUtils.newSha256;
+import static com.cx.plugin.utils.CxPluginUtils.toHex;
+
+/**
+ * Downloads CxSAST scan reports straight into a file.
+ * <p>
+ * The report is requested and its status polled through the HTTP layer of the logged in {@link CxShragaClient}, so
+ * the session, proxy and certificate settings of the client are used and no second login is made. Once created, the
+ * report is requested with the session's token and the response body is transferred into a {@link FileChannel} in
+ * fixed size chunks, so memory use does not grow with the report size. A download that breaks off is resumed from
+ * the bytes already written with an HTTP Range request. The size is checked against the response headers, and a
+ * Digest or Content-MD5 header sent by the server is verified against the whole file once its last part arrived.
+ * The SHA-256 of the report is written next to it ({@link #CHECKSUM_SUFFIX}) for whoever serves the file.
+ * <p>
+ * A partial file is only resumed within one download: every download creates a new report on the server, which
+ * need not have the same bytes as the one before.
+ */
+public class CxReportDownloader {
+
+    public static final String CHECKSUM_SUFFIX = ".sha256";
+
+    private static final String SAST_CREATE_REPORT = "reports/sastScan";
+    private static final String SAST_REPORT_STATUS = "reports/sastScan/{reportId}/status";
+    private static final String SAST_GET_REPORT = "/cxrestapi/reports/sastScan/{reportId}";
+    private static final String CONTENT_TYPE_APPLICATION_JSON_V1 = "application/json;v=1.0";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final long CHUNK_BYTES = 1024 * 1024;
+    private static final int MAX_RESUMES = 3;
+    private static final long STATUS_POLL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+    private static final long CREATE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(20);
+    private static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+    private static final int READ_TIMEOUT_MILLIS = (int) TimeUnit.MINUTES.toMillis(5);
+
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+    private final CxHttpClient http;
+    private final CxScanConfig config;
+    private final String url;
+    private final Logger log;
+    private volatile long reportId;
+    private volatile HttpGet current;
+    private volatile boolean aborted;
+    //the digest of the whole report announced by the server, null when it sent none
+    private Checksum expected;
+
+    /**
+     * @param shraga a client that is logged in to the server of the scan
+     */
+    public CxReportDownloader(CxShragaClient shraga, CxScanConfig config, Logger log) {
+        this.http = shraga.getHttpClient();
+        this.config = config;
+        this.url = config.getUrl().replaceAll("/+$", "");
+        this.log = log;
+    }
+
+    /**
+     * Creates a report of a scan on the server and downloads it.
+     *
+     * @param type   the report type, e.g. PDF or XML
+     * @param target the file to write; a partial download is kept next to it until it completed
+     */
+    public void download(long scanId, String type, File target) throws IOException, InterruptedException {
+        try {
+            reportId = createReport(scanId, type);
+            waitForReport(reportId);
+        } catch (CxClientException e) {
+            throw new IOException("Failed to create the " + type + " report: " + e.getMessage(), e);
+        }
+
+        File part = new File(target.getParentFile(), target.getName() + ".part");
+        if (part.exists() && !part.delete()) {
+            throw new IOException("Failed to delete " + part);
+        }
+        long started = System.currentTimeMillis();
+        expected = null;
+        IOException failure = null;
+        CloseableHttpClient client = newHttpClient();
+        try {
+            for (int attempt = 0; attempt <= MAX_RESUMES; attempt++) {
+                try {
+                    transfer(client, reportId, part);
+                    failure = null;
+                    break;
+                } catch (IOException e) {
+                    if (aborted) {
+                        throw e;
+                    }
+                    failure = e;
+                    log.info("Report download interrupted after " + part.length() + " bytes, resuming: " + e.getMessage());
+                }
+            }
+        } finally {
+            client.close();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        if (expected != null) {
+            expected.verify(part);
+        }
+        String sha256 = sha256(part);
+        if (target.exists() && !target.delete() || !part.renameTo(target)) {
+            throw new IOException("Failed to write report: " + target);
+        }
+        writeChecksum(target, sha256);
+        log.info(type + " report of scan " + scanId + " downloaded: " + target.length() + " bytes in " +
+                (System.currentTimeMillis() - started) + " ms, SHA-256 " + sha256);
+    }
+
+    /**
+     * Stops a download in progress from another thread: the open connection is closed and no more requests are made.
+     * The report itself cannot be cancelled on the server.
+     */
+    public void abort() {
+        aborted = true;
+        HttpGet request = current;
+        if (request != null) {
+            request.abort();
+        }
+    }
+
+    /**
+     * @return the id of the report on the server, 0 before it was requested
+     */
+    public long getReportId() {
+        return reportId;
+    }
+
+    /**
+     * @return the SHA-256 written next to a downloaded report, or null when there is none
+     */
+    public static String readChecksum(File report) {
+        File file = new File(report.getParentFile(), report.getName() + CHECKSUM_SUFFIX);
+        if (!file.isFile()) {
+            return null;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+            try {
+                String line = reader.readLine();
+                return line == null ? null : line.trim();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private long createReport(long scanId, String type) throws IOException, CxClientException {
+        ObjectNode request = MAPPER.createObjectNode();
+        request.put("reportType", type);
+        request.put("scanId", scanId);
+        StringEntity entity = new StringEntity(MAPPER.writeValueAsString(request), ContentType.APPLICATION_JSON);
+        JsonNode response = http.postRequest(SAST_CREATE_REPORT, CONTENT_TYPE_APPLICATION_JSON_V1, entity, JsonNode.class, HttpStatus.SC_ACCEPTED, "create scan report");
+        JsonNode id = response == null ? null : response.get("reportId");
+        if (id == null || !id.canConvertToLong()) {
+            throw new IOException("No report id in the Checkmarx server response");
+        }
+        return id.asLong();
+    }
+
+    private void waitForReport(long reportId) throws IOException, CxClientException, InterruptedException {
+        long deadline = System.currentTimeMillis() + CREATE_TIMEOUT_MILLIS;
+        while (true) {
+            if (aborted) {
+                throw new InterruptedIOException("Report download aborted");
+            }
+            JsonNode response = http.getRequest(SAST_REPORT_STATUS.replace("{reportId}", String.valueOf(reportId)),
+                    CONTENT_TYPE_APPLICATION_JSON_V1, JsonNode.class, HttpStatus.SC_OK, "report status", false);
+            String status = response == null ? "" : response.path("status").path("value").asText();
+            if ("Created".equalsIgnoreCase(status)) {
+                return;
+            }
+            if ("Failed".equalsIgnoreCase(status) || "Deleted".equalsIgnoreCase(status)) {
+                throw new IOException("Report " + reportId + " generation " + status.toLowerCase());
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Report " + reportId + " was not created within " + TimeUnit.MILLISECONDS.toMinutes(CREATE_TIMEOUT_MILLIS) + " minutes");
+            }
+            Thread.sleep(STATUS_POLL_MILLIS);
+        }
+    }
+
+    /**
+     * Appends the rest of the report to the partial file.
+     */
+    private void transfer(CloseableHttpClient client, long reportId, File part) throws IOException {
+        if (aborted) {
+            throw new InterruptedIOException("Report download aborted");
+        }
+        long position = part.length();
+        HttpGet request = new HttpGet(url + SAST_GET_REPORT.replace("{reportId}", String.valueOf(reportId)));
+        request.setHeader("Authorization", "Bearer " + http.getToken().getAccess_token());
+        request.setHeader("cxOrigin", config.getCxOrigin());
+        if (position > 0) {
+            request.setHeader("Range", "bytes=" + position + "-");
+        }
+        current = request;
+        CloseableHttpResponse response = client.execute(request);
+        try {
+            transfer(response, part, position);
+        } finally {
+            response.close();
+        }
+    }
+
+    private void transfer(HttpResponse response, File part, long position) throws IOException {
+        int status = response.getStatusLine().getStatusCode();
+        if (status != HttpStatus.SC_OK && status != HttpStatus.SC_PARTIAL_CONTENT || response.getEntity() == null) {
+            throw new IOException("Report download failed: HTTP " + status);
+        }
+        long total;
+        if (status == HttpStatus.SC_PARTIAL_CONTENT) {
+            String contentRange = header(response, "Content-Range");
+            Matcher range = CONTENT_RANGE.matcher(String.valueOf(contentRange));
+            if (!range.matches() || Long.parseLong(range.group(1)) != position) {
+                throw new IOException("Unexpected Content-Range: " + contentRange);
+            }
+            total = "*".equals(range.group(3)) ? -1 : Long.parseLong(range.group(3));
+        } else {
+            //the server ignored the range, start over
+            position = 0;
+            total = response.getEntity().getContentLength();
+        }
+        //Content-MD5 of a partial response covers only that part, a Digest always covers the whole report
+        Checksum checksum = Checksum.fromHeaders(response, status == HttpStatus.SC_OK);
+        if (checksum != null || status == HttpStatus.SC_OK) {
+            expected = checksum;
+        }
+
+        RandomAccessFile file = new RandomAccessFile(part, "rw");
+        ReadableByteChannel source = Channels.newChannel(response.getEntity().getContent());
+        try {
+            FileChannel channel = file.getChannel();
+            channel.truncate(position);
+            long transferred;
+            while ((transferred = channel.transferFrom(source, position, CHUNK_BYTES)) > 0) {
+                position += transferred;
+            }
+            channel.force(false);
+        } finally {
+            source.close();
+            file.close();
+        }
+        if (total >= 0 && position != total) {
+            throw new IOException("Report download incomplete: " + position + " of " + total + " bytes");
+        }
+    }
+
+    private static String sha256(File file) throws IOException {
+        return toHex(digest(file, newSha256()));
+    }
+
+    private static byte[] digest(File file, MessageDigest digest) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return digest.digest();
+        } finally {
+            in.close();
+        }
+    }
+
+    private static void writeChecksum(File report, String sha256) throws IOException {
+        Writer writer = new OutputStreamWriter(new FileOutputStream(new File(report.getParentFile(), report.getName() + CHECKSUM_SUFFIX)), UTF8);
+        try {
+            writer.write(sha256);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String header(HttpResponse response, String name) {
+        Header header = response.getFirstHeader(name);
+        return header == null ? null : header.getValue();
+    }
+
+    private static class Checksum {
+        final String algorithm;
+        final String value;
+
+        Checksum(String algorithm, String value) {
+            this.algorithm = algorithm;
+            this.value = value;
+        }
+
+        /**
+         * @param wholeBody whether the response carries the whole report, so a Content-MD5 covers all of it
+         */
+        static Checksum fromHeaders(HttpResponse response, boolean wholeBody) {
+            String digest = header(response, "Digest");
+            if (digest != null && digest.regionMatches(true, 0, "SHA-256=", 0, 8)) {
+                return new Checksum("SHA-256", digest.substring(8).trim());
+            }
+            String md5 = header(response, "Content-MD5");
+            if (wholeBody && md5 != null) {
+                return new Checksum("MD5", md5.trim());
+            }
+            return null;
+        }
+
+        void verify(File file) throws IOException {
+            String actual;
+            try {
+                actual = DatatypeConverter.printBase64Binary(digest(file, MessageDigest.getInstance(algorithm)));
+            } catch (java.security.NoSuchAlgorithmException e) {
+                return;
+            }
+            if (!value.equals(actual)) {
+                throw new IOException("Report checksum mismatch (" + algorithm + ")");
+            }
+        }
+    }
+
+    //the same proxy (JVM system properties) and certificate rules as the client's own HTTP layer
+    private CloseableHttpClient newHttpClient() throws IOException {
+        HttpClientBuilder builder = HttpClientBuilder.create().useSystemProperties();
+        builder.setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT_MILLIS)
+                .setSocketTimeout(READ_TIMEOUT_MILLIS)
+                .build());
+        if (config.isDisableCertificateValidation()) {
+            try {
+                builder.setSSLSocketFactory(new SSLConnectionSocketFactory(SSLContexts.custom().loadTrustMaterial(null, new TrustStrategy() {
+                    @Override
+                    public boolean isTrusted(X509Certificate[] chain, String authType) {
+                        return true;
+                    }
+                }).build(), NoopHostnameVerifier.INSTANCE));
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Failed to disable certificate validation: " + e.getMessage(), e);
+            }
+        }
+        return builder.build();
+    }
+}
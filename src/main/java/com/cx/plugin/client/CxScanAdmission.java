@@ -0,0 +1,250 @@
+package com.cx.plugin.client;
+
+import com.cx.plugin.utils.CxLoggerAdapter;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits the number of Checkmarx scans Bamboo builds run at the same time.
+ * <p>
+ * On the agent, builds beyond the limit wait in one queue per team, and the queues take turns (round robin), so a
+ * team that submits many scans at once cannot starve the others; within a team builds are served in arrival order.
+ * A waiting build logs its queue position every {@link #POSITION_LOG_SECONDS} seconds. Every build is counted while
+ * it holds its permit, also when no limit was set, so a limit set later starts from the right count.
+ * <p>
+ * Builds on other agents are only visible through the Checkmarx server: before it queues on the agent, a build
+ * waits in {@link #awaitServerCapacity} until fewer scans submitted by Bamboo are queued or running on the server
+ * than the limit, so the server wait does not hold up the agent's queue. The server limit is approximate: builds
+ * checking at about the same moment, on this agent or others, may still exceed it by a few scans.
+ */
+public class CxScanAdmission {
+
+    private static final long POSITION_LOG_SECONDS = 30;
+    private static final long SERVER_POLL_SECONDS = 30;
+
+    private static final CxScanAdmission INSTANCE = new CxScanAdmission();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Map<String, Deque<Waiter>> queues = new HashMap<String, Deque<Waiter>>();
+    //teams with waiting builds, the next team to be served first
+    private final Deque<String> turns = new ArrayDeque<String>();
+    private int running = 0;
+
+    //package private so tests can use their own instance
+    CxScanAdmission() {
+    }
+
+    public static CxScanAdmission getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Waits until the build may submit its scans.
+     *
+     * @param limit the maximum number of builds scanning at once, 0 or less for no limit
+     */
+    public Permit acquire(String team, String buildResultKey, int limit, CxLoggerAdapter log) throws InterruptedException {
+        lock.lock();
+        try {
+            if (limit <= 0) {
+                running++;
+                return new Permit(this);
+            }
+            Waiter waiter = new Waiter(buildResultKey, limit);
+            Deque<Waiter> queue = queues.get(team);
+            if (queue == null) {
+                queue = new ArrayDeque<Waiter>();
+                queues.put(team, queue);
+                turns.addLast(team);
+            }
+            queue.addLast(waiter);
+            admit();
+            if (!waiter.admitted) {
+                log.info("Waiting for a scan slot: " + running + " of " + limit + " scans running on this agent, queue position " + position(team, waiter));
+            }
+            try {
+                while (!waiter.admitted) {
+                    if (!changed.await(POSITION_LOG_SECONDS, TimeUnit.SECONDS) && !waiter.admitted) {
+                        log.info("Still waiting for a scan slot, queue position " + position(team, waiter));
+                    }
+                }
+            } catch (InterruptedException e) {
+                if (waiter.admitted) {
+                    release();
+                } else {
+                    remove(team, waiter);
+                }
+                throw e;
+            }
+            return new Permit(this);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until fewer than limit scans submitted by Bamboo are queued or running on the Checkmarx server. When the
+     * server queue cannot be read the build goes ahead.
+     *
+     * @param limit         the maximum number of scans, 0 or less for no limit
+     * @param timeoutMillis how long to wait at most, 0 or less to wait as long as it takes
+     * @throws TimeoutException when the server had no free slot within the timeout
+     */
+    public void awaitServerCapacity(CxScanLookup lookup, String origin, int limit, long timeoutMillis, CxLoggerAdapter log)
+            throws InterruptedException, TimeoutException {
+        if (limit <= 0) {
+            return;
+        }
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (true) {
+            int active;
+            try {
+                active = lookup.countActiveScans(origin);
+            } catch (Exception e) {
+                log.warn("Could not read the Checkmarx server scan queue, not waiting for it: " + e.getMessage());
+                return;
+            }
+            if (active < limit) {
+                return;
+            }
+            long sleepMillis = TimeUnit.SECONDS.toMillis(SERVER_POLL_SECONDS);
+            if (timeoutMillis > 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException("No scan slot on the Checkmarx server within the scan timeout (" +
+                            TimeUnit.MILLISECONDS.toMinutes(timeoutMillis) + " minutes): " + active +
+                            " scans from Bamboo are still queued or running, the limit is " + limit);
+                }
+                sleepMillis = Math.min(sleepMillis, remaining);
+            }
+            log.info("Waiting for a scan slot: " + active + " scans from Bamboo queued or running on the Checkmarx server, the limit is " + limit);
+            Thread.sleep(sleepMillis);
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            running--;
+            admit();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void admit() {
+        boolean admitted = false;
+        while (!turns.isEmpty()) {
+            String team = turns.peekFirst();
+            Deque<Waiter> queue = queues.get(team);
+            Waiter next = queue.peekFirst();
+            //the limit of the build whose turn it is; every build runs with the current global setting
+            if (running >= next.limit) {
+                break;
+            }
+            turns.pollFirst();
+            queue.pollFirst();
+            next.admitted = true;
+            running++;
+            admitted = true;
+            if (queue.isEmpty()) {
+                queues.remove(team);
+            } else {
+                turns.addLast(team);
+            }
+        }
+        if (admitted) {
+            changed.signalAll();
+        }
+    }
+
+    private void remove(String team, Waiter waiter) {
+        Deque<Waiter> queue = queues.get(team);
+        if (queue != null && queue.remove(waiter) && queue.isEmpty()) {
+            queues.remove(team);
+            turns.remove(team);
+        }
+    }
+
+    /**
+     * The position of the waiter when the teams keep taking turns: every team ahead in the current round,
+     * plus one build per team for each full round before the waiter's.
+     */
+    private int position(String team, Waiter waiter) {
+        int round = indexOf(queues.get(team), waiter);
+        int position = 1;
+        for (String other : turns) {
+            if (other.equals(team)) {
+                position += round;
+                continue;
+            }
+            int size = queues.get(other).size();
+            position += Math.min(size, round);
+            //teams before the waiter's team in the current turn order are also served in its round
+            if (size > round && isBefore(other, team)) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    private boolean isBefore(String a, String b) {
+        for (String team : turns) {
+            if (team.equals(a)) {
+                return true;
+            }
+            if (team.equals(b)) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static int indexOf(Deque<Waiter> queue, Waiter waiter) {
+        int i = 0;
+        for (Waiter w : queue) {
+            if (w == waiter) {
+                return i;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    private static class Waiter {
+        final String buildResultKey;
+        final int limit;
+        boolean admitted = false;
+
+        Waiter(String buildResultKey, int limit) {
+            this.buildResultKey = buildResultKey;
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * A build's slot. Release it once the scans were submitted (asynchronous mode) or finished.
+     */
+    public static class Permit {
+        private CxScanAdmission owner;
+
+        private Permit(CxScanAdmission owner) {
+            this.owner = owner;
+        }
+
+        public synchronized void release() {
+            if (owner != null) {
+                owner.release();
+                owner = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.cx.plugin.client;
+
+import com.cx.restclient.CxShragaClient;
+import com.cx.restclient.exception.CxClientException;
+import com.cx.restclient.httpClient.CxHttpClient;
+import com.cx.restclient.osa.dto.OSAResults;
+import com.cx.restclient.sast.dto.SASTResults;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.http.HttpStatus;
+
+import java.io.IOException;
+
+/**
+ * Looks up the results of one scan by its id, and the scans queue of the server, through the HTTP layer of a logged
+ * in {@link CxShragaClient}.
+ * <p>
+ * The client itself only returns the results of the latest scan of a project, which belong to a different scan once
+ * a newer scan of the project finished.
+ */
+public class CxScanLookup {
+
+    private static final String SAST_SCAN = "sast/scans/{scanId}";
+    private static final String SAST_SCAN_STATISTICS = "sast/scans/{scanId}/resultsStatistics";
+    private static final String OSA_SCAN = "osa/scans/{scanId}";
+    private static final String SAST_SCANS_QUEUE = "sast/scansQueue";
+    private static final String CONTENT_TYPE_APPLICATION_JSON_V1 = "application/json;v=1.0";
+
+    private final CxShragaClient shraga;
+    private final CxHttpClient http;
+    private final String url;
+
+    public CxScanLookup(CxShragaClient shraga, String url) {
+        this.shraga = shraga;
+        this.http = shraga.getHttpClient();
+        this.url = url.replaceAll("/+$", "");
+    }
+
+    /**
+     * @return the results of the CxSAST scan, or null while it is still running
+     * @throws UnavailableException when the scan ended without results or is not known to the server
+     */
+    public SASTResults getSASTResults(String scanId) throws IOException, CxClientException, UnavailableException {
+        JsonNode scan = get(SAST_SCAN, scanId);
+        String status = scan.path("status").path("name").asText();
+        if ("Canceled".equalsIgnoreCase(status) || "Failed".equalsIgnoreCase(status) || "Deleted".equalsIgnoreCase(status)) {
+            throw new UnavailableException("CxSAST scan " + scanId + " ended with status " + status);
+        }
+        if (!"Finished".equalsIgnoreCase(status)) {
+            return null;
+        }
+        long projectId = scan.path("project").path("id").asLong();
+        JsonNode statistics = get(SAST_SCAN_STATISTICS, scanId);
+
+        SASTResults results = new SASTResults();
+        results.setScanId(Long.parseLong(scanId));
+        results.setHigh(statistics.path("highSeverity").asInt());
+        results.setMedium(statistics.path("mediumSeverity").asInt());
+        results.setLow(statistics.path("lowSeverity").asInt());
+        results.setInformation(statistics.path("infoSeverity").asInt());
+        results.setSastScanLink(url + "/CxWebClient/ViewerMain.aspx?scanId=" + scanId + "&ProjectID=" + projectId);
+        results.setSastProjectLink(url + "/CxWebClient/portal#/projectState/" + projectId + "/Summary");
+        results.setSastResultsReady(true);
+        return results;
+    }
+
+    /**
+     * The server only reports the results of the latest CxOSA scan of a project, so the results of an older scan
+     * cannot be fetched anymore once a newer scan succeeded.
+     *
+     * @return the results of the CxOSA scan, or null while it is still running
+     * @throws UnavailableException when the scan failed, or its results were replaced by a newer scan
+     */
+    public OSAResults getOSAResults(String scanId) throws IOException, CxClientException, UnavailableException {
+        String state = get(OSA_SCAN, scanId).path("state").path("name").asText();
+        if ("Failed".equalsIgnoreCase(state)) {
+            throw new UnavailableException("CxOSA scan " + scanId + " failed");
+        }
+        if (!"Succeeded".equalsIgnoreCase(state)) {
+            return null;
+        }
+        OSAResults latest = shraga.getLatestOSAResults();
+        if (latest == null || !scanId.equals(latest.getOsaScanId())) {
+            throw new UnavailableException("CxOSA scan " + scanId + " was superseded by scan " +
+                    (latest == null ? null : latest.getOsaScanId()) + " and its results are no longer available");
+        }
+        return latest;
+    }
+
+    /**
+     * @return the number of CxSAST scans queued or running on the server that were submitted with the given origin
+     */
+    public int countActiveScans(String origin) throws IOException, CxClientException {
+        JsonNode queue = http.getRequest(SAST_SCANS_QUEUE, CONTENT_TYPE_APPLICATION_JSON_V1, JsonNode.class,
+                HttpStatus.SC_OK, "scans queue", false);
+        int count = 0;
+        if (queue != null) {
+            for (JsonNode scan : queue) {
+                if (origin.equalsIgnoreCase(scan.path("origin").asText())) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private JsonNode get(String path, String scanId) throws IOException, CxClientException, UnavailableException {
+        JsonNode response;
+        try {
+            response = http.getRequest(path.replace("{scanId}", scanId), CONTENT_TYPE_APPLICATION_JSON_V1, JsonNode.class,
+                    HttpStatus.SC_OK, "scan " + scanId, false);
+        } catch (CxClientException e) {
+            if (String.valueOf(e.getMessage()).contains(String.valueOf(HttpStatus.SC_NOT_FOUND))) {
+                throw new UnavailableException("Scan " + scanId + " is not known to the Checkmarx server");
+            }
+            throw e;
+        }
+        if (response == null) {
+            throw new IOException("Empty response for scan " + scanId);
+        }
+        return response;
+    }
+
+    /**
+     * Thrown when the results of a scan will never be available.
+     */
+    public static class UnavailableException extends Exception {
+        public UnavailableException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.cx.plugin.client;
+
+import com.cx.plugin.utils.CxLoggerAdapter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Agent wide bookkeeping of the scans the builds on this agent are waiting for.
+ * <p>
+ * The status polling itself happens inside CxShragaClient.waitForSASTResults()/waitForOSAResults(), which polls
+ * from the first second of the wait. For a scan that is known to take a while that only produces status requests
+ * that cannot succeed, so the coordinator holds the first poll back: it keeps the typical duration of past scans
+ * per server, project, engine and scan type (full or incremental), and lets a build start polling only when about
+ * half of that has passed. The more scans are in flight on the agent, the longer the server queue, so the delay grows
+ * with the in-flight count. The build thread still blocks during the delay; what is saved is the server's work
+ * answering status requests. The delay is taken off the scan timeout by the caller, so the timeout still counts from
+ * the creation of the scan.
+ */
+public class CxScanWaitCoordinator {
+
+    private static final double INITIAL_DELAY_FRACTION = 0.5;
+    private static final double DELAY_PER_IN_FLIGHT_SCAN = 0.05;
+    private static final double MAX_QUEUE_FACTOR = 2.0;
+    private static final long MAX_INITIAL_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(15);
+    private static final double HISTORY_WEIGHT = 0.3;
+    private static final int MAX_HISTORY_ENTRIES = 1024;
+
+    private static final CxScanWaitCoordinator INSTANCE = new CxScanWaitCoordinator();
+
+    private final Map<String, Long> expectedMillis = new ConcurrentHashMap<String, Long>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final ScheduledExecutorService scheduler;
+
+    private CxScanWaitCoordinator() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NotNull Runnable r) {
+                Thread thread = new Thread(r, "cx-scan-wait-coordinator");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static CxScanWaitCoordinator getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers a scan the calling build is about to wait for.
+     *
+     * @param historyKey      identifies scans of the same kind (server, project, engine, full or incremental)
+     * @param createdNanos    System.nanoTime() when the scan was created
+     * @param timeoutMinutes  the scan timeout, the delay never takes more than half of it; 0 or less for none
+     */
+    public Ticket register(String historyKey, long createdNanos, int timeoutMinutes) {
+        return new Ticket(historyKey, createdNanos, timeoutMinutes, inFlight.incrementAndGet());
+    }
+
+    /**
+     * Blocks until the scan is expected to be far enough along for status polling to be worthwhile.
+     *
+     * @return the milliseconds waited
+     */
+    public long awaitFirstPoll(Ticket ticket, CxLoggerAdapter log) throws InterruptedException {
+        Long expected = expectedMillis.get(ticket.historyKey);
+        if (expected == null) {
+            return 0;
+        }
+        long delayMillis = initialDelayMillis(ticket, expected);
+        if (delayMillis <= 0) {
+            return 0;
+        }
+        log.info("Similar scans took about " + TimeUnit.MILLISECONDS.toSeconds(expected) +
+                " seconds (" + ticket.inFlightAtStart + " scans in progress on this agent). Checking the scan status in " +
+                TimeUnit.MILLISECONDS.toSeconds(delayMillis) + " seconds");
+        FutureTask<Void> wakeUp = new FutureTask<Void>(new Runnable() {
+            @Override
+            public void run() {
+            }
+        }, null);
+        scheduler.schedule(wakeUp, delayMillis, TimeUnit.MILLISECONDS);
+        try {
+            wakeUp.get();
+        } catch (ExecutionException e) {
+            //the wake up task does nothing
+        } finally {
+            wakeUp.cancel(false);
+        }
+        return delayMillis;
+    }
+
+    /**
+     * Unregisters the scan, and records its duration when it completed normally.
+     */
+    public void complete(Ticket ticket, boolean succeeded) {
+        if (ticket.completed) {
+            return;
+        }
+        ticket.completed = true;
+        inFlight.decrementAndGet();
+        if (!succeeded) {
+            return;
+        }
+        long duration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ticket.createdNanos);
+        Long previous = expectedMillis.get(ticket.historyKey);
+        long expected = previous == null ? duration : (long) (previous * (1 - HISTORY_WEIGHT) + duration * HISTORY_WEIGHT);
+        if (previous == null && expectedMillis.size() >= MAX_HISTORY_ENTRIES) {
+            expectedMillis.clear();
+        }
+        expectedMillis.put(ticket.historyKey, expected);
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private long initialDelayMillis(Ticket ticket, long expected) {
+        double queueFactor = Math.min(MAX_QUEUE_FACTOR, 1 + DELAY_PER_IN_FLIGHT_SCAN * (ticket.inFlightAtStart - 1));
+        long delay = (long) (expected * INITIAL_DELAY_FRACTION * queueFactor);
+        delay = Math.min(delay, MAX_INITIAL_DELAY_MILLIS);
+        if (ticket.timeoutMinutes > 0) {
+            delay = Math.min(delay, TimeUnit.MINUTES.toMillis(ticket.timeoutMinutes) / 2);
+        }
+        return delay - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - ticket.createdNanos);
+    }
+
+    public static class Ticket {
+        private final String historyKey;
+        private final long createdNanos;
+        private final int timeoutMinutes;
+        private final int inFlightAtStart;
+        private boolean completed = false;
+
+        private Ticket(String historyKey, long createdNanos, int timeoutMinutes, int inFlightAtStart) {
+            this.historyKey = historyKey;
+            this.createdNanos = createdNanos;
+            this.timeoutMinutes = timeoutMinutes;
+            this.inFlightAtStart = inFlightAtStart;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.cx.plugin.client;
+
+import com.cx.restclient.exception.CxClientException;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.slf4j.Logger;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * A build's access to a Checkmarx server: every call goes through the server's {@link CxCircuitBreaker.Circuit},
+ * and calls that may safely be repeated (login, lookups) are retried after a random delay as long as the build's
+ * retry budget lasts.
+ * <p>
+ * Only failures to reach the server (see {@link #isServerFailure}) count against the circuit; an error answer of a
+ * reachable server (a wrong password, a denied project) is a success as far as availability goes, and a local error
+ * of the build does not count at all.
+ */
+public class CxServerGuard {
+
+    static final int RETRY_BUDGET = 3;
+    private static final long BASE_DELAY_MILLIS = 2000;
+    private static final long MAX_DELAY_MILLIS = 30000;
+    //how the client and the report download put the HTTP status of an error answer into their messages
+    private static final Pattern SERVER_ERROR = Pattern.compile("(?i)(status code:?|HTTP) ?5\\d\\d\\b");
+
+    private final CxCircuitBreaker.Circuit circuit;
+    private final Logger log;
+    private int retriesLeft = RETRY_BUDGET;
+
+    public CxServerGuard(String url, Logger log) {
+        this.circuit = CxCircuitBreaker.getInstance().circuit(url);
+        this.log = log;
+    }
+
+    /**
+     * @return true when the server's circuit is open and the build should not try to reach it
+     */
+    public boolean isRejecting() {
+        return circuit.isRejecting();
+    }
+
+    public void logState() {
+        log.info("Checkmarx server circuit: " + circuit);
+    }
+
+    /**
+     * Calls the server once.
+     *
+     * @throws CxCircuitBreaker.OpenException without calling when the circuit is open
+     */
+    public <T> T call(Callable<T> action) throws Exception {
+        checkAvailable();
+        try {
+            T result = action.call();
+            recordSuccess();
+            return result;
+        } catch (Exception e) {
+            recordFailure(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Calls the server, and calls again after a failure to reach it while the retry budget of the build lasts.
+     * Only for calls that have no effect when repeated.
+     */
+    public <T> T callWithRetries(String operation, Callable<T> action) throws Exception {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call(action);
+            } catch (CxCircuitBreaker.OpenException e) {
+                throw e;
+            } catch (Exception e) {
+                if (!isServerFailure(e) || !takeRetry()) {
+                    throw e;
+                }
+                long delay = retryDelay(attempt);
+                log.info(operation + " failed (" + e.getMessage() + "), retrying in " + delay + " ms, " +
+                        retriesLeft + " more retries allowed for this build");
+                Thread.sleep(delay);
+            }
+        }
+    }
+
+    /**
+     * @throws CxCircuitBreaker.OpenException when the circuit is open
+     */
+    public void checkAvailable() throws CxCircuitBreaker.OpenException {
+        if (!circuit.allowRequest()) {
+            throw new CxCircuitBreaker.OpenException(circuit);
+        }
+    }
+
+    public void recordSuccess() {
+        if (circuit.onSuccess()) {
+            log.info("Checkmarx server circuit closed, the server is answering again");
+        }
+    }
+
+    /**
+     * Counts a failed call against the circuit when the server could not be reached. An error answer of the server
+     * counts as a success, a local error of the build is ignored.
+     */
+    public void recordFailure(Exception e) {
+        if (!isServerFailure(e)) {
+            if (e instanceof CxClientException) {
+                //the server answered, with an error
+                recordSuccess();
+            }
+            return;
+        }
+        if (circuit.onFailure()) {
+            log.warn("Checkmarx server circuit opened, builds on this agent will not contact " + circuit.getUrl() +
+                    " for " + CxCircuitBreaker.OPEN_SECONDS + " seconds: " + e.getMessage());
+        }
+    }
+
+    /**
+     * A failure to reach the server is a refused or timed out connection, an unknown host, a connection the server
+     * dropped without answering, or a 5xx answer. Other I/O errors (a workspace that cannot be zipped, a file that
+     * cannot be read) are local to the build and do not count.
+     *
+     * @return true when the exception, or one of its causes, is a failure to reach the server
+     */
+    public static boolean isServerFailure(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof CxCircuitBreaker.OpenException) {
+                return false;
+            }
+            if (t instanceof ConnectException || t instanceof SocketTimeoutException || t instanceof ConnectTimeoutException ||
+                    t instanceof UnknownHostException || t instanceof NoRouteToHostException || t instanceof NoHttpResponseException) {
+                return true;
+            }
+            if (t.getMessage() != null && SERVER_ERROR.matcher(t.getMessage()).find()) {
+                return true;
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return true when the exception, or one of its causes, was thrown because the circuit is open
+     */
+    public static boolean isCircuitOpen(Throwable e) {
+        for (Throwable t = e; t != null && t.getCause() != t; t = t.getCause()) {
+            if (t instanceof CxCircuitBreaker.OpenException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized boolean takeRetry() {
+        if (retriesLeft <= 0) {
+            return false;
+        }
+        retriesLeft--;
+        return true;
+    }
+
+    //full jitter, so builds that failed together do not retry together
+    private static long retryDelay(int attempt) {
+        long ceiling = Math.min(MAX_DELAY_MILLIS, BASE_DELAY_MILLIS << Math.min(attempt - 1, 10));
+        return BASE_DELAY_MILLIS / 2 + ThreadLocalRandom.current().nextLong(ceiling);
+    }
+}
@@ -0,0 +1,178 @@
+package com.cx.plugin.client;
+
+import com.cx.restclient.CxShragaClient;
+import com.cx.restclient.dto.Team;
+import com.cx.restclient.sast.dto.Preset;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static com.cx.plugin.utils.CxParam.CX_ORIGIN;
+import static com.cx.plugin.utils.CxPluginUtils.sha256Hex;
+
+/**
+ * Presets and teams of a Checkmarx server, cached per server URL and credentials.
+ * <p>
+ * Used by the task configuration page so it renders the preset and team lists from memory instead of logging in to
+ * the server on every request. An entry is fresh for {@link #FRESH_MILLIS}; after that it is still served while a
+ * background refresh reloads it (stale-while-revalidate), until it expires after {@link #EXPIRE_MILLIS} and has to be
+ * loaded synchronously again. Failed loads are never cached. The "Connect to Server" button always logs in through
+ * {@link #reload}, so it tests the server and not the cache.
+ */
+public class CxServerMetadataCache {
+
+    private static final long FRESH_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final long EXPIRE_MILLIS = TimeUnit.HOURS.toMillis(1);
+    private static final int MAX_ENTRIES = 256;
+
+    private static final CxServerMetadataCache INSTANCE = new CxServerMetadataCache();
+
+    private final Logger log = LoggerFactory.getLogger(CxServerMetadataCache.class);
+    private final ConcurrentMap<String, ServerMetadata> entries = new ConcurrentHashMap<String, ServerMetadata>();
+    private final ConcurrentMap<String, Future<ServerMetadata>> loading = new ConcurrentHashMap<String, Future<ServerMetadata>>();
+    private final ExecutorService refresher;
+
+    private CxServerMetadataCache() {
+        refresher = Executors.newFixedThreadPool(2, new ThreadFactory() {
+            @Override
+            public Thread newThread(@NotNull Runnable r) {
+                Thread thread = new Thread(r, "cx-metadata-refresh");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public static CxServerMetadataCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param password the plain text password
+     * @throws Exception when the metadata is not cached and loading it from the server failed (e.g. login failed)
+     */
+    public ServerMetadata get(String url, String username, String password) throws Exception {
+        String key = url + "\n" + username + "\n" + sha256Hex(password);
+        ServerMetadata cached = entries.get(key);
+        long now = System.currentTimeMillis();
+
+        if (cached != null && now - cached.getFetchedAt() < EXPIRE_MILLIS) {
+            if (now - cached.getFetchedAt() >= FRESH_MILLIS) {
+                load(key, url, username, password, true);
+            }
+            return cached;
+        }
+
+        Future<ServerMetadata> future = load(key, url, username, password, false);
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : new ExecutionException(cause);
+        }
+    }
+
+    /**
+     * Loads the metadata from the server, bypassing the cache, and caches the result.
+     *
+     * @param password the plain text password
+     * @throws Exception when logging in to the server or loading the metadata failed
+     */
+    public ServerMetadata reload(String url, String username, String password) throws Exception {
+        String key = url + "\n" + username + "\n" + sha256Hex(password);
+        ServerMetadata metadata = fetch(url, username, password);
+        put(key, metadata);
+        return metadata;
+    }
+
+    /**
+     * Drops every entry, e.g. after the global server settings changed.
+     */
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    /**
+     * Stops the background refresh threads; called when the plugin is disabled.
+     */
+    public void shutdown() {
+        refresher.shutdownNow();
+        entries.clear();
+    }
+
+    //one load per key at a time; concurrent callers share the in-flight load
+    private Future<ServerMetadata> load(final String key, final String url, final String username, final String password, boolean background) {
+        FutureTask<ServerMetadata> task = new FutureTask<ServerMetadata>(new Callable<ServerMetadata>() {
+            @Override
+            public ServerMetadata call() throws Exception {
+                try {
+                    ServerMetadata metadata = fetch(url, username, password);
+                    put(key, metadata);
+                    return metadata;
+                } finally {
+                    loading.remove(key);
+                }
+            }
+        });
+
+        Future<ServerMetadata> inFlight = loading.putIfAbsent(key, task);
+        if (inFlight != null) {
+            return inFlight;
+        }
+        if (background) {
+            try {
+                refresher.execute(task);
+            } catch (RejectedExecutionException e) {
+                loading.remove(key);
+            }
+        } else {
+            task.run();
+        }
+        return task;
+    }
+
+    private void put(String key, ServerMetadata metadata) {
+        if (entries.size() >= MAX_ENTRIES) {
+            entries.clear();
+        }
+        entries.put(key, metadata);
+    }
+
+    private ServerMetadata fetch(String url, String username, String password) throws Exception {
+        CxShragaClient shraga = new CxShragaClient(url, username, password, CX_ORIGIN, false, log);
+        try {
+            shraga.login();
+            return new ServerMetadata(shraga.getPresetList(), shraga.getTeamList(), System.currentTimeMillis());
+        } finally {
+            shraga.close();
+        }
+    }
+
+    public static class ServerMetadata {
+        private final List<Preset> presets;
+        private final List<Team> teams;
+        private final long fetchedAt;
+
+        ServerMetadata(List<Preset> presets, List<Team> teams, long fetchedAt) {
+            this.presets = presets == null ? null : Collections.unmodifiableList(presets);
+            this.teams = teams == null ? null : Collections.unmodifiableList(teams);
+            this.fetchedAt = fetchedAt;
+        }
+
+        public List<Preset> getPresets() {
+            return presets;
+        }
+
+        public List<Team> getTeams() {
+            return teams;
+        }
+
+        public long getFetchedAt() {
+            return fetchedAt;
+        }
+    }
+}
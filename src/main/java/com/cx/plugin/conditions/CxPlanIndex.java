@@ -0,0 +1,104 @@
+package com.cx.plugin.conditions;
+
+import com.atlassian.bamboo.plan.cache.ImmutableChain;
+import com.atlassian.bamboo.plan.cache.ImmutableJob;
+import com.atlassian.bamboo.plan.cache.ImmutablePlan;
+import com.atlassian.bamboo.task.TaskDefinition;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Plan key to the keys of its jobs that contain a Checkmarx task, built lazily per plan.
+ * <p>
+ * Bamboo replaces the cached immutable plan object whenever the plan configuration changes, so an entry is valid only
+ * while it was built from the very plan object being rendered; a configuration change therefore rebuilds the entry on
+ * the next lookup, without the index holding on to old plan objects. Entries whose plan object was collected (a
+ * deleted plan, or one not rendered since its last change) are dropped whenever an entry is rebuilt.
+ */
+public class CxPlanIndex {
+
+    private static final String CX_TASK_PLUGIN_KEY = "com.cx.checkmarx-bamboo-plugin:checkmarx";
+
+    private static final CxPlanIndex INSTANCE = new CxPlanIndex();
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private CxPlanIndex() {
+    }
+
+    public static CxPlanIndex getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the keys of the plan's jobs (or of the job itself) that contain a Checkmarx task
+     */
+    public Set<String> getCxJobKeys(ImmutablePlan plan) {
+        String planKey = plan.getPlanKey().getKey();
+        Entry entry = entries.get(planKey);
+        if (entry == null || entry.plan.get() != plan) {
+            pruneCollected();
+            entry = new Entry(plan, indexJobs(plan));
+            entries.put(planKey, entry);
+        }
+        return entry.cxJobKeys;
+    }
+
+    public boolean hasCxTask(ImmutablePlan plan) {
+        return !getCxJobKeys(plan).isEmpty();
+    }
+
+    //entries of deleted plans, whose plan objects Bamboo no longer holds
+    private void pruneCollected() {
+        Iterator<Entry> it = entries.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().plan.get() == null) {
+                it.remove();
+            }
+        }
+    }
+
+    private static Set<String> indexJobs(ImmutablePlan plan) {
+        Set<String> ret = new HashSet<String>();
+        if (plan instanceof ImmutableChain) {
+            for (ImmutableJob job : ((ImmutableChain) plan).getAllJobs()) {
+                if (hasCxTask(job)) {
+                    ret.add(job.getPlanKey().getKey());
+                }
+            }
+        } else if (plan instanceof ImmutableJob) {
+            ImmutableJob job = (ImmutableJob) plan;
+            if (hasCxTask(job)) {
+                ret.add(job.getPlanKey().getKey());
+            }
+        }
+        return Collections.unmodifiableSet(ret);
+    }
+
+    private static boolean hasCxTask(ImmutableJob job) {
+        List<TaskDefinition> tasks = job.getBuildDefinition().getTaskDefinitions();
+        for (TaskDefinition task : tasks) {
+            if (task != null && task.getPluginKey().startsWith(CX_TASK_PLUGIN_KEY)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Entry {
+        final WeakReference<ImmutablePlan> plan;
+        final Set<String> cxJobKeys;
+
+        Entry(ImmutablePlan plan, Set<String> cxJobKeys) {
+            this.plan = new WeakReference<ImmutablePlan>(plan);
+            this.cxJobKeys = cxJobKeys;
+        }
+    }
+}
@@ -4,18 +4,9 @@ package com.cx.plugin.conditions;
  * Created by Galn on 07/06/2017.
  */
 
-import com.atlassian.bamboo.plan.cache.ImmutableBuildable;
-import com.atlassian.bamboo.plan.cache.ImmutableChain;
-import com.atlassian.bamboo.plan.cache.ImmutableJob;
 import com.atlassian.bamboo.plan.cache.ImmutablePlan;
 import com.atlassian.bamboo.resultsummary.AbstractResultsSummary;
-import com.atlassian.bamboo.task.TaskDefinition;
-import com.atlassian.bamboo.task.TaskIdentifier;
 import com.atlassian.plugin.web.Condition;
-import com.atlassian.util.concurrent.Nullable;
-import com.google.common.base.Preconditions;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 
 import java.util.Map;
 
@@ -34,30 +25,11 @@ public class DisplayResultsCondition implements Condition {
         AbstractResultsSummary a = (AbstractResultsSummary) context.get("resultSummary");
         boolean buildFinished = "Finished".equals(a.getLifeCycleState().toString());
 
-        return buildFinished && hasCxTask(((ImmutablePlan) context.get("plan")), new IsCxTaskPredicate<TaskDefinition>());
+        return buildFinished && hasCxTask(((ImmutablePlan) context.get("plan")));
     }
 
 
-    public static boolean hasCxTask(ImmutablePlan plan, Predicate<TaskDefinition> predicate) {
-        if (plan instanceof ImmutableChain) {
-            ImmutableJob job = ((ImmutableChain) plan).getAllJobs().get(0);
-            if (Iterables.any(job.getBuildDefinition().getTaskDefinitions(), predicate)) {
-                return true;
-            }
-        } else if (plan instanceof ImmutableBuildable) {
-            ImmutableJob job = (ImmutableJob) plan;
-            if (Iterables.any(job.getBuildDefinition().getTaskDefinitions(), predicate)) {
-                return true;
-            }
-        }
-        return false;
+    public static boolean hasCxTask(ImmutablePlan plan) {
+        return plan != null && CxPlanIndex.getInstance().hasCxTask(plan);
     }
-
-    private static class IsCxTaskPredicate<TASKDEF extends TaskIdentifier> implements Predicate<TASKDEF> {
-        @Override
-        public boolean apply(@Nullable TASKDEF taskIdentifier) {
-            return (Preconditions.checkNotNull(taskIdentifier)).getPluginKey().startsWith("com.cx.checkmarx-bamboo-plugin:checkmarx");
-        }
-
-    }
-}
\ No newline at end of file
+}
@@ -13,6 +13,7 @@ import com.atlassian.bamboo.utils.error.ErrorCollection;
 import com.atlassian.bamboo.ww2.actions.build.admin.config.task.ConfigureBuildTasks;
 import com.atlassian.spring.container.ContainerManager;
 import com.atlassian.util.concurrent.Nullable;
+import com.cx.plugin.client.CxServerMetadataCache;
 import com.cx.restclient.CxShragaClient;
 import com.cx.restclient.dto.Team;
 import com.cx.restclient.sast.dto.Preset;
@@ -79,8 +80,13 @@ public class AgentTaskConfigurator extends AbstractTaskConfigurator {
         populateScanControlFields(context, null, true);
 
         context.put(GENERATE_PDF_REPORT, OPTION_FALSE);
+        context.put(SKIP_UNCHANGED_SOURCES, OPTION_FALSE);
+        context.put(REUSE_SAME_REVISION, OPTION_FALSE);
+        context.put(PDF_REPORT_IN_BACKGROUND, OPTION_FALSE);
         context.put(OSA_FILTER_PATTERNS, "");
         context.put(OSA_ARCHIVE_INCLUDE_PATTERNS, DEFAULT_OSA_ARCHIVE_INCLUDE_PATTERNS);
+        context.put(OSA_PARALLEL_SCAN, OPTION_FALSE);
+        context.put(FAIL_FAST, OPTION_FALSE);
     }
 
     private String resolveProjectName(@NotNull Map<String, Object> context) {
@@ -113,10 +119,11 @@ public class AgentTaskConfigurator extends AbstractTaskConfigurator {
 
     private void populateTeamAndPresetFields(final String serverUrl, final String username, final String password, String preset, String teamPath, @NotNull final Map<String, Object> context) {
         try {
-            //the method initialized the CxClient service
-            if (tryLogin(username, password, serverUrl)) {
+            //presets and teams are served from the shared cache, the server is contacted only on a miss
+            CxServerMetadataCache.ServerMetadata metadata = loadServerMetadata(username, password, serverUrl);
+            if (metadata != null) {
 
-                presetList = convertPresetToMap(shraga.getPresetList());
+                presetList = convertPresetToMap(metadata.getPresets());
                 context.put(PRESET_LIST, presetList);
                 if (!StringUtils.isEmpty(preset)) {
                     context.put(PRESET_ID, preset);
@@ -124,7 +131,7 @@ public class AgentTaskConfigurator extends AbstractTaskConfigurator {
                     context.put(PRESET_ID, presetList.entrySet().iterator().next());
                 }
 
-                teamPathList = convertTeamPathToMap(shraga.getTeamList());
+                teamPathList = convertTeamPathToMap(metadata.getTeams());
                 context.put(TEAM_PATH_LIST, teamPathList);
                 if (!StringUtils.isEmpty(teamPath)) {
                     context.put(TEAM_PATH_ID, teamPath);
@@ -173,8 +180,13 @@ public class AgentTaskConfigurator extends AbstractTaskConfigurator {
         context.put(INTERVAL_ENDS, intervalEnds);
 
         context.put(GENERATE_PDF_REPORT, configMap.get(GENERATE_PDF_REPORT));
+        context.put(SKIP_UNCHANGED_SOURCES, configMap.get(SKIP_UNCHANGED_SOURCES));
+        context.put(REUSE_SAME_REVISION, configMap.get(REUSE_SAME_REVISION));
+        context.put(PDF_REPORT_IN_BACKGROUND, configMap.get(PDF_REPORT_IN_BACKGROUND));
         context.put(OSA_ENABLED, configMap.get(OSA_ENABLED));
         context.put(OSA_INSTALL_BEFORE_SCAN, configMap.get(OSA_INSTALL_BEFORE_SCAN));
+        context.put(OSA_PARALLEL_SCAN, configMap.get(OSA_PARALLEL_SCAN));
+        context.put(FAIL_FAST, configMap.get(FAIL_FAST));
         context.put(OSA_FILTER_PATTERNS, configMap.get(OSA_FILTER_PATTERNS));
         context.put(OSA_ARCHIVE_INCLUDE_PATTERNS, configMap.get(OSA_ARCHIVE_INCLUDE_PATTERNS));
 
@@ -283,6 +295,9 @@ public class AgentTaskConfigurator extends AbstractTaskConfigurator {
 
         config.put(PROJECT_NAME, getDefaultString(params, PROJECT_NAME).trim());
         config.put(GENERATE_PDF_REPORT, params.getString(GENERATE_PDF_REPORT));
+        config.put(SKIP_UNCHANGED_SOURCES, params.getString(SKIP_UNCHANGED_SOURCES));
+        config.put(REUSE_SAME_REVISION, params.getString(REUSE_SAME_REVISION));
+        config.put(PDF_REPORT_IN_BACKGROUND, params.getString(PDF_REPORT_IN_BACKGROUND));
 
         String presetId = params.getString(PRESET_ID);
         String presetName = "";
@@ -327,6 +342,8 @@ public class AgentTaskConfigurator extends AbstractTaskConfigurator {
         config.put(IS_SYNCHRONOUS, params.getString(IS_SYNCHRONOUS));
         config.put(POLICY_VIOLATION_ENABLED, params.getString(POLICY_VIOLATION_ENABLED));
         config.put(OSA_INSTALL_BEFORE_SCAN, params.getString(OSA_INSTALL_BEFORE_SCAN));
+        config.put(OSA_PARALLEL_SCAN, params.getString(OSA_PARALLEL_SCAN));
+        config.put(FAIL_FAST, params.getString(FAIL_FAST));
 
         config.put(IS_INCREMENTAL, params.getString(IS_INCREMENTAL));
         config.put(IS_INTERVALS, params.getString(IS_INTERVALS));
@@ -384,6 +401,20 @@ public class AgentTaskConfigurator extends AbstractTaskConfigurator {
         return StringUtils.defaultString(params.getString(key));
     }
 
+    private CxServerMetadataCache.ServerMetadata loadServerMetadata(String username, String cxPass, String serverUrl) {
+        log.debug("loadServerMetadata: server URL: " + serverUrl + " username" + username);
+
+        if (!StringUtils.isEmpty(serverUrl) && !StringUtils.isEmpty(username) && !StringUtils.isEmpty(cxPass)) {
+            try {
+                URL cxUrl = new URL(serverUrl);
+                return CxServerMetadataCache.getInstance().get(cxUrl.toString().trim(), username, decrypt(cxPass));
+            } catch (Exception e) {
+                log.debug("Failed to login to retrieve data from server. " + e.getMessage(), e);
+            }
+        }
+        return null;
+    }
+
     //the method initialized shraga client
     private boolean tryLogin(String username, String cxPass, String serverUrl) {
         log.debug("tryLogin: server URL: " + serverUrl + " username" + username);
@@ -5,6 +5,9 @@ import com.atlassian.bamboo.configuration.AdministrationConfigurationPersister;
 import com.atlassian.bamboo.configuration.GlobalAdminAction;
 import com.atlassian.spring.container.ContainerManager;
 import com.atlassian.util.concurrent.NotNull;
+import com.cx.plugin.client.CxServerMetadataCache;
+import com.cx.plugin.utils.CxCredentialService;
+import com.cx.plugin.utils.CxGlobalSettings;
 import com.cx.plugin.utils.CxParam;
 import org.codehaus.plexus.util.StringUtils;
 
@@ -42,6 +45,8 @@ public class CxGlobalConfig extends GlobalAdminAction {
     private String globalOsaMediumThreshold;
     private String globalOsaLowThreshold;
     private String globalDenyProject;
+    private String globalMaxConcurrentScans;
+    private String globalSkipWhenServerUnavailable;
 
     @Override
     public String execute() {
@@ -70,12 +75,15 @@ public class CxGlobalConfig extends GlobalAdminAction {
         globalOsaMediumThreshold = adminConfig.getSystemProperty(GLOBAL_OSA_MEDIUM_THRESHOLD);
         globalOsaLowThreshold = adminConfig.getSystemProperty(GLOBAL_OSA_LOW_THRESHOLD);
         globalDenyProject = adminConfig.getSystemProperty(GLOBAL_DENY_PROJECT);
+        globalMaxConcurrentScans = adminConfig.getSystemProperty(GLOBAL_MAX_CONCURRENT_SCANS);
+        globalSkipWhenServerUnavailable = adminConfig.getSystemProperty(GLOBAL_SKIP_WHEN_UNAVAILABLE);
         return INPUT;
     }
 
     public String save() {
         boolean error = isURLInvalid(globalServerUrl);
         error |= isScanTimeoutInvalid();
+        error |= isNegative(getGlobalMaxConcurrentScans(), GLOBAL_MAX_CONCURRENT_SCANS);
 
         if ("true".equals(globalIsSynchronous)) {
             if ("true".equals(globalThresholdsEnabled)) {
@@ -118,7 +126,13 @@ public class CxGlobalConfig extends GlobalAdminAction {
         adminConfig.setSystemProperty(GLOBAL_OSA_MEDIUM_THRESHOLD, globalOsaMediumThreshold);
         adminConfig.setSystemProperty(GLOBAL_OSA_LOW_THRESHOLD, globalOsaLowThreshold);
         adminConfig.setSystemProperty(GLOBAL_DENY_PROJECT, globalDenyProject);
+        adminConfig.setSystemProperty(GLOBAL_MAX_CONCURRENT_SCANS, globalMaxConcurrentScans);
+        adminConfig.setSystemProperty(GLOBAL_SKIP_WHEN_UNAVAILABLE, globalSkipWhenServerUnavailable);
+        adminConfig.setSystemProperty(GLOBAL_CONFIG_VERSION, String.valueOf(System.currentTimeMillis()));
         ((AdministrationConfigurationPersister) ContainerManager.getComponent("administrationConfigurationPersister")).saveAdministrationConfiguration(adminConfig);
+        CxCredentialService.getInstance().invalidate();
+        CxServerMetadataCache.getInstance().invalidateAll();
+        CxGlobalSettings.publish(adminConfig);
 
         addActionMessage(getText("cxDefaultConfigSuccess.label"));
         return SUCCESS;
@@ -325,4 +339,20 @@ public class CxGlobalConfig extends GlobalAdminAction {
     public void setGlobalHideResults(String globalHideResults) {
         this.globalHideResults = globalHideResults;
     }
+
+    public String getGlobalMaxConcurrentScans() {
+        return globalMaxConcurrentScans;
+    }
+
+    public void setGlobalMaxConcurrentScans(String globalMaxConcurrentScans) {
+        this.globalMaxConcurrentScans = globalMaxConcurrentScans.trim();
+    }
+
+    public String getGlobalSkipWhenServerUnavailable() {
+        return globalSkipWhenServerUnavailable;
+    }
+
+    public void setGlobalSkipWhenServerUnavailable(String globalSkipWhenServerUnavailable) {
+        this.globalSkipWhenServerUnavailable = globalSkipWhenServerUnavailable;
+    }
 }
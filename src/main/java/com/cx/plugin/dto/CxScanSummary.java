@@ -0,0 +1,244 @@
+package com.cx.plugin.dto;
+
+import com.cx.restclient.configuration.CxScanConfig;
+import com.cx.restclient.osa.dto.OSAResults;
+import com.cx.restclient.sast.dto.SASTResults;
+
+import java.util.Map;
+
+import static com.cx.plugin.utils.CxParam.*;
+
+/**
+ * The part of the scan results kept with the build result: vulnerability counts, threshold state, scan ids and links.
+ * The summary panels are rendered from it on demand, so no HTML is stored with the build.
+ */
+public class CxScanSummary {
+
+    private boolean sastEnabled;
+    private String sastScanId;
+    private int sastHigh;
+    private int sastMedium;
+    private int sastLow;
+    private String sastScanLink;
+    private String sastProjectLink;
+    private boolean sastCancelled;
+
+    private boolean osaEnabled;
+    private String osaScanId;
+    private int osaHigh;
+    private int osaMedium;
+    private int osaLow;
+    private String osaProjectLink;
+    private boolean osaCancelled;
+    private boolean osaPolicyEnforced;
+    private int osaPolicyViolations;
+
+    private boolean thresholdFailed;
+    private String thresholdDescription;
+
+    /**
+     * @param thresholdFailure the exceeded thresholds, null when none was exceeded
+     */
+    public static CxScanSummary fromResults(ScanResults results, CxScanConfig config, String thresholdFailure) {
+        CxScanSummary summary = new CxScanSummary();
+        summary.thresholdFailed = thresholdFailure != null;
+        summary.thresholdDescription = thresholdFailure;
+        SASTResults sast = results.getSastResults();
+        if (config.getSastEnabled() && sast != null) {
+            summary.sastEnabled = true;
+            summary.sastScanId = String.valueOf(sast.getScanId());
+            summary.sastHigh = sast.getHigh();
+            summary.sastMedium = sast.getMedium();
+            summary.sastLow = sast.getLow();
+            summary.sastScanLink = sast.getSastScanLink();
+            summary.sastProjectLink = sast.getSastProjectLink();
+        }
+        OSAResults osa = results.getOsaResults();
+        if (config.getOsaEnabled() && osa != null) {
+            summary.osaEnabled = true;
+            summary.osaScanId = osa.getOsaScanId();
+            if (osa.getResults() != null) {
+                summary.osaHigh = osa.getResults().getTotalHighVulnerabilities();
+                summary.osaMedium = osa.getResults().getTotalMediumVulnerabilities();
+                summary.osaLow = osa.getResults().getTotalLowVulnerabilities();
+            }
+            summary.osaProjectLink = osa.getOsaProjectSummaryLink();
+            //the client only checks the project's policy when enforcement is enabled
+            summary.osaPolicyEnforced = config.getEnablePolicyViolations();
+            summary.osaPolicyViolations = osa.getOsaViolations() == null ? 0 : osa.getOsaViolations().size();
+        }
+        return summary;
+    }
+
+    /**
+     * Records that the CxSAST scan was cancelled before it finished (fail fast), so it has no counts.
+     */
+    public void markSastCancelled() {
+        sastEnabled = false;
+        sastCancelled = true;
+        sastHigh = sastMedium = sastLow = 0;
+    }
+
+    /**
+     * Records that the CxOSA scan was cancelled before it finished (fail fast), so it has no counts.
+     */
+    public void markOsaCancelled() {
+        osaEnabled = false;
+        osaCancelled = true;
+        osaHigh = osaMedium = osaLow = 0;
+        osaPolicyEnforced = false;
+        osaPolicyViolations = 0;
+    }
+
+    /**
+     * @return the summary stored with a build, or null when the build stored none
+     */
+    public static CxScanSummary fromCustomData(Map<String, String> data) {
+        if (!data.containsKey(SUMMARY_SAST_ENABLED)) {
+            return null;
+        }
+        CxScanSummary summary = new CxScanSummary();
+        summary.sastEnabled = Boolean.parseBoolean(data.get(SUMMARY_SAST_ENABLED));
+        summary.sastScanId = data.get(SUMMARY_SAST_SCAN_ID);
+        summary.sastHigh = toInt(data.get(SUMMARY_SAST_HIGH));
+        summary.sastMedium = toInt(data.get(SUMMARY_SAST_MEDIUM));
+        summary.sastLow = toInt(data.get(SUMMARY_SAST_LOW));
+        summary.sastScanLink = data.get(SUMMARY_SAST_SCAN_LINK);
+        summary.sastProjectLink = data.get(SUMMARY_SAST_PROJECT_LINK);
+        summary.sastCancelled = Boolean.parseBoolean(data.get(SUMMARY_SAST_CANCELLED));
+        summary.osaEnabled = Boolean.parseBoolean(data.get(SUMMARY_OSA_ENABLED));
+        summary.osaScanId = data.get(SUMMARY_OSA_SCAN_ID);
+        summary.osaHigh = toInt(data.get(SUMMARY_OSA_HIGH));
+        summary.osaMedium = toInt(data.get(SUMMARY_OSA_MEDIUM));
+        summary.osaLow = toInt(data.get(SUMMARY_OSA_LOW));
+        summary.osaProjectLink = data.get(SUMMARY_OSA_PROJECT_LINK);
+        summary.osaCancelled = Boolean.parseBoolean(data.get(SUMMARY_OSA_CANCELLED));
+        summary.osaPolicyEnforced = Boolean.parseBoolean(data.get(SUMMARY_OSA_POLICY_ENFORCED));
+        summary.osaPolicyViolations = toInt(data.get(SUMMARY_OSA_POLICY_VIOLATIONS));
+        summary.thresholdFailed = Boolean.parseBoolean(data.get(SUMMARY_THRESHOLD_FAILED));
+        summary.thresholdDescription = data.get(SUMMARY_THRESHOLD_DESCRIPTION);
+        return summary;
+    }
+
+    public void toCustomData(Map<String, String> data) {
+        data.put(SUMMARY_SAST_ENABLED, String.valueOf(sastEnabled));
+        data.put(SUMMARY_OSA_ENABLED, String.valueOf(osaEnabled));
+        data.put(SUMMARY_THRESHOLD_FAILED, String.valueOf(thresholdFailed));
+        if (sastEnabled) {
+            putIfSet(data, SUMMARY_SAST_SCAN_ID, sastScanId);
+            data.put(SUMMARY_SAST_HIGH, String.valueOf(sastHigh));
+            data.put(SUMMARY_SAST_MEDIUM, String.valueOf(sastMedium));
+            data.put(SUMMARY_SAST_LOW, String.valueOf(sastLow));
+            putIfSet(data, SUMMARY_SAST_SCAN_LINK, sastScanLink);
+            putIfSet(data, SUMMARY_SAST_PROJECT_LINK, sastProjectLink);
+        }
+        if (osaEnabled) {
+            putIfSet(data, SUMMARY_OSA_SCAN_ID, osaScanId);
+            data.put(SUMMARY_OSA_HIGH, String.valueOf(osaHigh));
+            data.put(SUMMARY_OSA_MEDIUM, String.valueOf(osaMedium));
+            data.put(SUMMARY_OSA_LOW, String.valueOf(osaLow));
+            putIfSet(data, SUMMARY_OSA_PROJECT_LINK, osaProjectLink);
+        }
+        if (sastCancelled) {
+            data.put(SUMMARY_SAST_CANCELLED, "true");
+        }
+        if (osaCancelled) {
+            data.put(SUMMARY_OSA_CANCELLED, "true");
+        }
+        if (osaPolicyEnforced) {
+            data.put(SUMMARY_OSA_POLICY_ENFORCED, "true");
+            data.put(SUMMARY_OSA_POLICY_VIOLATIONS, String.valueOf(osaPolicyViolations));
+        }
+        putIfSet(data, SUMMARY_THRESHOLD_DESCRIPTION, thresholdDescription);
+    }
+
+    private static void putIfSet(Map<String, String> data, String key, String value) {
+        if (value != null) {
+            data.put(key, value);
+        }
+    }
+
+    private static int toInt(String value) {
+        try {
+            return value == null ? 0 : Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public boolean isSastEnabled() {
+        return sastEnabled;
+    }
+
+    public String getSastScanId() {
+        return sastScanId;
+    }
+
+    public int getSastHigh() {
+        return sastHigh;
+    }
+
+    public int getSastMedium() {
+        return sastMedium;
+    }
+
+    public int getSastLow() {
+        return sastLow;
+    }
+
+    public String getSastScanLink() {
+        return sastScanLink;
+    }
+
+    public String getSastProjectLink() {
+        return sastProjectLink;
+    }
+
+    public boolean isSastCancelled() {
+        return sastCancelled;
+    }
+
+    public boolean isOsaEnabled() {
+        return osaEnabled;
+    }
+
+    public String getOsaScanId() {
+        return osaScanId;
+    }
+
+    public int getOsaHigh() {
+        return osaHigh;
+    }
+
+    public int getOsaMedium() {
+        return osaMedium;
+    }
+
+    public int getOsaLow() {
+        return osaLow;
+    }
+
+    public String getOsaProjectLink() {
+        return osaProjectLink;
+    }
+
+    public boolean isOsaCancelled() {
+        return osaCancelled;
+    }
+
+    public boolean isOsaPolicyEnforced() {
+        return osaPolicyEnforced;
+    }
+
+    public int getOsaPolicyViolations() {
+        return osaPolicyViolations;
+    }
+
+    public boolean isThresholdFailed() {
+        return thresholdFailed;
+    }
+
+    public String getThresholdDescription() {
+        return thresholdDescription;
+    }
+}
@@ -0,0 +1,286 @@
+package com.cx.plugin.results;
+
+import com.atlassian.bamboo.bandana.PlanAwareBandanaContext;
+import com.atlassian.bamboo.configuration.ConfigurationMapImpl;
+import com.atlassian.bamboo.plan.PlanKeys;
+import com.atlassian.bamboo.plan.cache.CachedPlanManager;
+import com.atlassian.bamboo.plan.cache.ImmutableJob;
+import com.atlassian.bamboo.resultsummary.ResultsSummary;
+import com.atlassian.bamboo.resultsummary.ResultsSummaryManager;
+import com.atlassian.bamboo.task.TaskDefinition;
+import com.atlassian.bandana.BandanaManager;
+import com.atlassian.spring.container.ContainerManager;
+import com.cx.plugin.client.CxScanLookup;
+import com.cx.plugin.dto.CxScanSummary;
+import com.cx.plugin.dto.ScanResults;
+import com.cx.plugin.utils.CxConfigHelper;
+import com.cx.plugin.utils.CxThresholds;
+import com.cx.restclient.CxShragaClient;
+import com.cx.restclient.configuration.CxScanConfig;
+import com.cx.restclient.osa.dto.OSAResults;
+import com.cx.restclient.sast.dto.SASTResults;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.io.File;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import static com.cx.plugin.utils.CxParam.*;
+
+/**
+ * Collects the results of scans submitted by asynchronous Checkmarx tasks.
+ * <p>
+ * Runs on the Bamboo server only. The scans still pending are kept in Bandana, so they survive a restart; every
+ * {@link #POLL_PERIOD_SECONDS} seconds the collector asks the Checkmarx server for the results of each pending scan
+ * by its id, and once the scan is done its summary is written into the custom data of the job result, where the
+ * result panels pick it up. A scan whose results can never be fetched (it failed, or for CxOSA a newer scan replaced
+ * them) is marked unavailable right away instead of being polled until {@link #GIVE_UP_MILLIS}.
+ */
+public class CxDeferredResultCollector implements InitializingBean, DisposableBean {
+
+    private static final String BANDANA_KEY = "com.cx.plugin.pendingScans";
+    private static final long POLL_PERIOD_SECONDS = 60;
+    private static final long GIVE_UP_MILLIS = TimeUnit.DAYS.toMillis(2);
+
+    private static final Object LOCK = new Object();
+
+    private final Logger log = LoggerFactory.getLogger(CxDeferredResultCollector.class);
+    private ScheduledExecutorService scheduler;
+
+    @Override
+    public void afterPropertiesSet() {
+        if (getBandanaManager() == null) {
+            //a remote agent, the results are collected by the server
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(@NotNull Runnable r) {
+                Thread thread = new Thread(r, "cx-deferred-result-collector");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        scheduler.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    collect();
+                } catch (Throwable t) {
+                    log.warn("Failed to collect pending Checkmarx results: " + t.getMessage(), t);
+                }
+            }
+        }, POLL_PERIOD_SECONDS, POLL_PERIOD_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    public static void enqueue(PendingScan scan) {
+        synchronized (LOCK) {
+            Map<String, String> pending = load();
+            pending.put(scan.buildResultKey, scan.serialize());
+            store(pending);
+        }
+    }
+
+    private void collect() {
+        Map<String, String> pending;
+        synchronized (LOCK) {
+            pending = load();
+        }
+        for (String serialized : pending.values()) {
+            PendingScan scan = PendingScan.deserialize(serialized);
+            if (scan == null) {
+                continue;
+            }
+            boolean done;
+            try {
+                done = collect(scan);
+            } catch (Exception e) {
+                log.debug("Checkmarx results of " + scan.buildResultKey + " not collected yet: " + e.getMessage());
+                done = false;
+            }
+            if (!done && System.currentTimeMillis() - scan.submittedMillis > GIVE_UP_MILLIS) {
+                log.warn("Giving up on the Checkmarx results of " + scan.buildResultKey);
+                done = true;
+            }
+            if (done) {
+                synchronized (LOCK) {
+                    Map<String, String> current = load();
+                    current.remove(scan.buildResultKey);
+                    store(current);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true when the scan needs no more polling
+     */
+    private boolean collect(PendingScan scan) throws Exception {
+        ResultsSummaryManager resultsSummaryManager = (ResultsSummaryManager) ContainerManager.getComponent("resultsSummaryManager");
+        ResultsSummary summary = resultsSummaryManager.getResultsSummary(PlanKeys.getPlanResultKey(scan.buildResultKey));
+        TaskDefinition task = findTask(scan.jobKey, scan.taskId);
+        if (summary == null || task == null) {
+            return true;
+        }
+
+        CxConfigHelper configHelper = new CxConfigHelper(log);
+        CxScanConfig config = configHelper.resolveConfigurationMap(new ConfigurationMapImpl(task.getConfiguration()), new File(System.getProperty("java.io.tmpdir")));
+        config.setSastEnabled(scan.sastScanId != null);
+        config.setOsaEnabled(scan.osaScanId != null);
+
+        ScanResults ret = new ScanResults(new SASTResults(), new OSAResults());
+        CxShragaClient shraga = new CxShragaClient(config, log);
+        try {
+            shraga.init();
+            CxScanLookup lookup = new CxScanLookup(shraga, config.getUrl());
+            SASTResults sastResults = null;
+            OSAResults osaResults = null;
+            if (scan.sastScanId != null) {
+                sastResults = lookup.getSASTResults(scan.sastScanId);
+                if (sastResults == null) {
+                    return false;
+                }
+                ret.setSastResults(sastResults);
+            }
+            if (scan.osaScanId != null) {
+                osaResults = lookup.getOSAResults(scan.osaScanId);
+                if (osaResults == null) {
+                    return false;
+                }
+                ret.setOsaResults(osaResults);
+            }
+            CxScanSummary.fromResults(ret, config, CxThresholds.check(config, sastResults, osaResults)).toCustomData(ret.getSummary());
+        } catch (CxScanLookup.UnavailableException e) {
+            markUnavailable(resultsSummaryManager, summary, e.getMessage());
+            log.info("Checkmarx results of " + scan.buildResultKey + " are not available: " + e.getMessage());
+            return true;
+        } finally {
+            shraga.close();
+        }
+
+        Map<String, String> customBuildData = summary.getCustomBuildData();
+        customBuildData.putAll(ret.getSummary());
+        customBuildData.remove(PENDING_TASK_ID);
+        customBuildData.remove(PENDING_SAST_SCAN_ID);
+        customBuildData.remove(PENDING_OSA_SCAN_ID);
+        resultsSummaryManager.saveResultsSummary(summary);
+        log.info("Added Checkmarx results to " + scan.buildResultKey);
+        //the task duration is not known: the build did not wait for the scan
+        Date completed = summary.getBuildCompletedDate();
+        CxTrendStore.getInstance().append(scan.jobKey, summary.getBuildNumber(), completed != null ? completed.getTime() : System.currentTimeMillis(),
+                CxScanSummary.fromCustomData(customBuildData), 0);
+        return true;
+    }
+
+    private static void markUnavailable(ResultsSummaryManager resultsSummaryManager, ResultsSummary summary, String reason) {
+        Map<String, String> customBuildData = summary.getCustomBuildData();
+        customBuildData.remove(PENDING_TASK_ID);
+        customBuildData.remove(PENDING_SAST_SCAN_ID);
+        customBuildData.remove(PENDING_OSA_SCAN_ID);
+        customBuildData.put(PENDING_UNAVAILABLE, reason);
+        resultsSummaryManager.saveResultsSummary(summary);
+    }
+
+    /**
+     * @return the configuration of a Checkmarx task as it is now, or null when the job or the task was removed
+     */
+    static TaskDefinition findTask(String jobKey, long taskId) {
+        CachedPlanManager cachedPlanManager = (CachedPlanManager) ContainerManager.getComponent("cachedPlanManager");
+        ImmutableJob job = cachedPlanManager.getPlanByKey(PlanKeys.getPlanKey(jobKey), ImmutableJob.class);
+        if (job == null) {
+            return null;
+        }
+        for (TaskDefinition task : job.getBuildDefinition().getTaskDefinitions()) {
+            if (task.getId() == taskId) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> load() {
+        BandanaManager bandanaManager = getBandanaManager();
+        Object value = bandanaManager == null ? null : bandanaManager.getValue(PlanAwareBandanaContext.GLOBAL_CONTEXT, BANDANA_KEY);
+        return value instanceof Map ? new HashMap<String, String>((Map<String, String>) value) : new HashMap<String, String>();
+    }
+
+    private static void store(Map<String, String> pending) {
+        BandanaManager bandanaManager = getBandanaManager();
+        if (bandanaManager != null) {
+            bandanaManager.setValue(PlanAwareBandanaContext.GLOBAL_CONTEXT, BANDANA_KEY, new HashMap<String, String>(pending));
+        }
+    }
+
+    private static BandanaManager getBandanaManager() {
+        try {
+            return (BandanaManager) ContainerManager.getComponent("bandanaManager");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * A scan left running by an asynchronous task. Stored as a tab separated string so the persisted value is a
+     * plain map of strings.
+     */
+    public static class PendingScan {
+        final String buildResultKey;
+        final String jobKey;
+        final long taskId;
+        final String sastScanId;
+        final String osaScanId;
+        final long submittedMillis;
+
+        public PendingScan(String buildResultKey, String jobKey, long taskId, String sastScanId, String osaScanId, long submittedMillis) {
+            this.buildResultKey = buildResultKey;
+            this.jobKey = jobKey;
+            this.taskId = taskId;
+            this.sastScanId = sastScanId;
+            this.osaScanId = osaScanId;
+            this.submittedMillis = submittedMillis;
+        }
+
+        String serialize() {
+            return buildResultKey + "\t" + jobKey + "\t" + taskId + "\t" + nullToEmpty(sastScanId) + "\t" +
+                    nullToEmpty(osaScanId) + "\t" + submittedMillis;
+        }
+
+        static PendingScan deserialize(String value) {
+            String[] parts = value.split("\t", -1);
+            if (parts.length != 6) {
+                return null;
+            }
+            try {
+                return new PendingScan(parts[0], parts[1], Long.parseLong(parts[2]), emptyToNull(parts[3]),
+                        emptyToNull(parts[4]), Long.parseLong(parts[5]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private static String nullToEmpty(String value) {
+            return value == null ? "" : value;
+        }
+
+        private static String emptyToNull(String value) {
+            return value.isEmpty() ? null : value;
+        }
+    }
+}
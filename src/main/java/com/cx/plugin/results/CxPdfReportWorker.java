@@ -0,0 +1,313 @@
+package com.cx.plugin.results;
+
+import com.atlassian.bamboo.bandana.PlanAwareBandanaContext;
+import com.atlassian.bamboo.configuration.ConfigurationMapImpl;
+import com.atlassian.bamboo.plan.PlanKeys;
+import com.atlassian.bamboo.resultsummary.ResultsSummary;
+import com.atlassian.bamboo.resultsummary.ResultsSummaryManager;
+import com.atlassian.bamboo.task.TaskDefinition;
+import com.atlassian.bandana.BandanaManager;
+import com.atlassian.spring.container.ContainerManager;
+import com.cx.plugin.client.CxReportDownloader;
+import com.cx.plugin.utils.CxConfigHelper;
+import com.cx.restclient.CxShragaClient;
+import com.cx.restclient.configuration.CxScanConfig;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.cx.plugin.utils.CxParam.*;
+import static com.cx.plugin.utils.CxPluginUtils.resolveHomeDir;
+
+/**
+ * Generates the CxSAST PDF reports of builds that did not wait for them, and links them to the build results.
+ * <p>
+ * Runs on the Bamboo server only, with {@link #THREADS} worker threads. A failed attempt is retried with a growing
+ * delay, up to {@link #MAX_ATTEMPTS} attempts; at most {@link #MAX_QUEUED} reports wait for a worker, further
+ * reports are marked as failed. The reports still to generate are kept in Bandana, so they survive a restart.
+ * <p>
+ * Every {@link #SWEEP_PERIOD_HOURS} hours the report files of build results that no longer exist (deleted, or
+ * removed by the build expiry) are deleted.
+ */
+public class CxPdfReportWorker implements InitializingBean, DisposableBean {
+
+    private static final String BANDANA_KEY = "com.cx.plugin.pendingPdfReports";
+    private static final int THREADS = 2;
+    private static final int MAX_QUEUED = 200;
+    private static final int MAX_ATTEMPTS = 4;
+    private static final long FIRST_RETRY_SECONDS = 30;
+    private static final long SWEEP_DELAY_MINUTES = 10;
+    private static final long SWEEP_PERIOD_HOURS = 24;
+
+    private static final Object LOCK = new Object();
+    private static volatile CxPdfReportWorker active;
+
+    private final Logger log = LoggerFactory.getLogger(CxPdfReportWorker.class);
+    private final AtomicInteger queued = new AtomicInteger();
+    private ScheduledThreadPoolExecutor executor;
+
+    @Override
+    public void afterPropertiesSet() {
+        if (getBandanaManager() == null) {
+            //a remote agent, the reports are generated by the server
+            return;
+        }
+        executor = new ScheduledThreadPoolExecutor(THREADS, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NotNull Runnable r) {
+                Thread thread = new Thread(r, "cx-pdf-report-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        active = this;
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    sweep();
+                } catch (Throwable t) {
+                    log.warn("Failed to delete the CxSAST PDF reports of removed builds: " + t.getMessage(), t);
+                }
+            }
+        }, SWEEP_DELAY_MINUTES, TimeUnit.HOURS.toMinutes(SWEEP_PERIOD_HOURS), TimeUnit.MINUTES);
+        Map<String, String> pending;
+        synchronized (LOCK) {
+            pending = load();
+        }
+        for (String serialized : pending.values()) {
+            ReportJob job = ReportJob.deserialize(serialized);
+            if (job != null) {
+                enqueue(job);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        active = null;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    public static void submit(ReportJob job) {
+        synchronized (LOCK) {
+            Map<String, String> pending = load();
+            pending.put(job.buildResultKey, job.serialize());
+            store(pending);
+        }
+        CxPdfReportWorker worker = active;
+        if (worker != null) {
+            worker.enqueue(job);
+        }
+    }
+
+    /**
+     * @return the file the PDF report of a build is stored in on the Bamboo server
+     */
+    public static File reportFile(String buildResultKey) throws IOException {
+        return new File(resolveHomeDir(CX_PDF_REPORT_DIR), buildResultKey + ".pdf");
+    }
+
+    /**
+     * Deletes the report files (with their checksums and partial downloads) of build results that are gone.
+     */
+    private void sweep() throws IOException {
+        File[] files = resolveHomeDir(CX_PDF_REPORT_DIR).listFiles();
+        if (files == null) {
+            return;
+        }
+        Map<String, String> pending;
+        synchronized (LOCK) {
+            pending = load();
+        }
+        ResultsSummaryManager resultsSummaryManager = (ResultsSummaryManager) ContainerManager.getComponent("resultsSummaryManager");
+        Map<String, Boolean> exists = new HashMap<String, Boolean>();
+        int deleted = 0;
+        for (File file : files) {
+            String name = file.getName();
+            int end = name.indexOf(".pdf");
+            if (end <= 0) {
+                continue;
+            }
+            String buildResultKey = name.substring(0, end);
+            if (pending.containsKey(buildResultKey)) {
+                continue;
+            }
+            Boolean found = exists.get(buildResultKey);
+            if (found == null) {
+                try {
+                    found = resultsSummaryManager.getResultsSummary(PlanKeys.getPlanResultKey(buildResultKey)) != null;
+                } catch (IllegalArgumentException e) {
+                    //not a build result key, not one of our files
+                    found = true;
+                }
+                exists.put(buildResultKey, found);
+            }
+            if (!found && file.delete()) {
+                deleted++;
+            }
+        }
+        if (deleted > 0) {
+            log.info("Deleted " + deleted + " CxSAST PDF report files of removed builds");
+        }
+    }
+
+    private void enqueue(ReportJob job) {
+        if (queued.incrementAndGet() > MAX_QUEUED) {
+            log.warn("Too many CxSAST PDF reports waiting, not generating the report of " + job.buildResultKey);
+            finish(job, PDF_REPORT_FAILED);
+            return;
+        }
+        schedule(job, 0);
+    }
+
+    private void schedule(final ReportJob job, long delaySeconds) {
+        executor.schedule(new Runnable() {
+            @Override
+            public void run() {
+                attempt(job);
+            }
+        }, delaySeconds, TimeUnit.SECONDS);
+    }
+
+    private void attempt(ReportJob job) {
+        String state;
+        try {
+            state = generate(job);
+        } catch (Exception e) {
+            job.attempts++;
+            if (job.attempts < MAX_ATTEMPTS) {
+                long delay = FIRST_RETRY_SECONDS << (job.attempts - 1);
+                log.info("Failed to generate the CxSAST PDF report of " + job.buildResultKey + " (attempt " + job.attempts +
+                        "), retrying in " + delay + " seconds: " + e.getMessage());
+                synchronized (LOCK) {
+                    Map<String, String> pending = load();
+                    pending.put(job.buildResultKey, job.serialize());
+                    store(pending);
+                }
+                schedule(job, delay);
+                return;
+            }
+            log.warn("Giving up on the CxSAST PDF report of " + job.buildResultKey + ": " + e.getMessage(), e);
+            state = PDF_REPORT_FAILED;
+        }
+        finish(job, state);
+    }
+
+    /**
+     * @return the final state of the report
+     */
+    private String generate(ReportJob job) throws Exception {
+        TaskDefinition task = CxDeferredResultCollector.findTask(job.jobKey, job.taskId);
+        if (task == null) {
+            log.info("The Checkmarx task of " + job.buildResultKey + " was removed, not generating its PDF report");
+            return PDF_REPORT_FAILED;
+        }
+        CxConfigHelper configHelper = new CxConfigHelper(log);
+        CxScanConfig config = configHelper.resolveConfigurationMap(new ConfigurationMapImpl(task.getConfiguration()),
+                new File(System.getProperty("java.io.tmpdir")));
+        File file = reportFile(job.buildResultKey);
+        CxShragaClient shraga = new CxShragaClient(config, log);
+        try {
+            shraga.login();
+            new CxReportDownloader(shraga, config, log).download(Long.parseLong(job.scanId), "PDF", file);
+        } finally {
+            shraga.close();
+        }
+        log.info("Generated the CxSAST PDF report of " + job.buildResultKey + " (" + file.length() + " bytes)");
+        return PDF_REPORT_READY;
+    }
+
+    private void finish(ReportJob job, String state) {
+        queued.decrementAndGet();
+        synchronized (LOCK) {
+            Map<String, String> pending = load();
+            pending.remove(job.buildResultKey);
+            store(pending);
+        }
+        try {
+            ResultsSummaryManager resultsSummaryManager = (ResultsSummaryManager) ContainerManager.getComponent("resultsSummaryManager");
+            ResultsSummary summary = resultsSummaryManager.getResultsSummary(PlanKeys.getPlanResultKey(job.buildResultKey));
+            if (summary != null) {
+                summary.getCustomBuildData().put(PDF_REPORT_STATE, state);
+                resultsSummaryManager.saveResultsSummary(summary);
+                CxSummaryRenderer.getInstance().invalidate(job.buildResultKey);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to link the CxSAST PDF report to " + job.buildResultKey + ": " + e.getMessage(), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> load() {
+        BandanaManager bandanaManager = getBandanaManager();
+        Object value = bandanaManager == null ? null : bandanaManager.getValue(PlanAwareBandanaContext.GLOBAL_CONTEXT, BANDANA_KEY);
+        return value instanceof Map ? new HashMap<String, String>((Map<String, String>) value) : new HashMap<String, String>();
+    }
+
+    private static void store(Map<String, String> pending) {
+        BandanaManager bandanaManager = getBandanaManager();
+        if (bandanaManager != null) {
+            bandanaManager.setValue(PlanAwareBandanaContext.GLOBAL_CONTEXT, BANDANA_KEY, new HashMap<String, String>(pending));
+        }
+    }
+
+    private static BandanaManager getBandanaManager() {
+        try {
+            return (BandanaManager) ContainerManager.getComponent("bandanaManager");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * The PDF report of one build. Stored as a tab separated string, like the pending scans of the result collector.
+     */
+    public static class ReportJob {
+        final String buildResultKey;
+        final String jobKey;
+        final long taskId;
+        final String scanId;
+        int attempts;
+
+        public ReportJob(String buildResultKey, String jobKey, long taskId, String scanId) {
+            this.buildResultKey = buildResultKey;
+            this.jobKey = jobKey;
+            this.taskId = taskId;
+            this.scanId = scanId;
+        }
+
+        String serialize() {
+            return buildResultKey + "\t" + jobKey + "\t" + taskId + "\t" + scanId + "\t" + attempts;
+        }
+
+        static ReportJob deserialize(String value) {
+            String[] parts = value.split("\t", -1);
+            if (parts.length != 5) {
+                return null;
+            }
+            try {
+                ReportJob job = new ReportJob(parts[0], parts[1], Long.parseLong(parts[2]), parts[3]);
+                job.attempts = Integer.parseInt(parts[4]);
+                return job;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.cx.plugin.results;
+
+import com.atlassian.bamboo.build.CustomBuildProcessorServer;
+import com.atlassian.bamboo.v2.build.BuildContext;
+import com.cx.plugin.dto.CxScanSummary;
+import com.cx.plugin.utils.CxPhaseTimer;
+import org.apache.commons.lang.math.NumberUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+import static com.cx.plugin.utils.CxParam.*;
+
+/**
+ * Runs on the Bamboo server when a job finishes. Records the job's Checkmarx results in the {@link CxTrendStore},
+ * hands the scans an asynchronous Checkmarx task left running to the {@link CxDeferredResultCollector}, and the
+ * PDF reports the task did not wait for to the {@link CxPdfReportWorker}.
+ */
+public class CxPendingScanProcessor implements CustomBuildProcessorServer {
+
+    private BuildContext buildContext;
+
+    @Override
+    public void init(@NotNull BuildContext buildContext) {
+        this.buildContext = buildContext;
+    }
+
+    @NotNull
+    @Override
+    public BuildContext call() throws Exception {
+        Map<String, String> customBuildData = buildContext.getBuildResult().getCustomBuildData();
+        CxScanSummary summary = CxScanSummary.fromCustomData(customBuildData);
+        if (summary != null) {
+            CxTrendStore.getInstance().append(buildContext.getPlanResultKey().getPlanKey().getKey(), buildContext.getBuildNumber(),
+                    System.currentTimeMillis(), summary, NumberUtils.toLong(customBuildData.get(CxPhaseTimer.TIMING_PREFIX + "total")));
+        }
+        String taskId = customBuildData.get(PENDING_TASK_ID);
+        if (taskId != null) {
+            CxDeferredResultCollector.enqueue(new CxDeferredResultCollector.PendingScan(buildContext.getBuildResultKey(),
+                    buildContext.getPlanResultKey().getPlanKey().getKey(), Long.parseLong(taskId),
+                    customBuildData.get(PENDING_SAST_SCAN_ID), customBuildData.get(PENDING_OSA_SCAN_ID),
+                    System.currentTimeMillis()));
+        }
+        if (PDF_REPORT_PENDING.equals(customBuildData.get(PDF_REPORT_STATE))) {
+            CxPdfReportWorker.submit(new CxPdfReportWorker.ReportJob(buildContext.getBuildResultKey(),
+                    buildContext.getPlanResultKey().getPlanKey().getKey(), Long.parseLong(customBuildData.get(PDF_REPORT_TASK_ID)),
+                    customBuildData.get(PDF_REPORT_SCAN_ID)));
+        }
+        return buildContext;
+    }
+}
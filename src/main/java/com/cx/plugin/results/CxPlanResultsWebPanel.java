@@ -1,13 +1,16 @@
 package com.cx.plugin.results;
 
 import com.atlassian.bamboo.chains.ChainResultsSummaryImpl;
+import com.atlassian.bamboo.plan.cache.ImmutablePlan;
+import com.atlassian.bamboo.resultsummary.BuildResultsSummary;
 import com.atlassian.plugin.web.model.WebPanel;
+import com.cx.plugin.conditions.CxPlanIndex;
 
 import java.io.IOException;
 import java.io.Writer;
+import java.util.List;
 import java.util.Map;
-
-import static com.cx.plugin.utils.CxParam.HTML_REPORT;
+import java.util.Set;
 
 /**
  * Created by: dorg.
@@ -18,9 +21,27 @@ public class CxPlanResultsWebPanel implements WebPanel {
 
     public String getHtml(Map<String, Object> map) {
         ChainResultsSummaryImpl a = (ChainResultsSummaryImpl) map.get("resultSummary");
-        Map<String, String> results = a.getOrderedJobResultSummaries().get(0).getCustomBuildData();
-
-        return results.get(HTML_REPORT);
+        List<BuildResultsSummary> jobs = a.getOrderedJobResultSummaries();
+        BuildResultsSummary job = jobs.get(0);
+
+        //show the first job that runs a Checkmarx task, not necessarily the first job of the chain
+        ImmutablePlan plan = (ImmutablePlan) map.get("plan");
+        if (plan != null) {
+            Set<String> cxJobKeys = CxPlanIndex.getInstance().getCxJobKeys(plan);
+            for (BuildResultsSummary candidate : jobs) {
+                if (cxJobKeys.contains(candidate.getPlanKey().getKey())) {
+                    job = candidate;
+                    break;
+                }
+            }
+        }
+
+        String html = CxSummaryRenderer.getInstance().getHtml(job.getBuildResultKey(), job.getCustomBuildData());
+        String trend = CxTrendChart.render(CxTrendStore.getInstance().read(job.getPlanKey().getKey()));
+        if (trend == null) {
+            return html;
+        }
+        return html == null ? trend : html + trend;
     }
 
     public void writeHtml(Writer writer, Map<String, Object> map) throws IOException {
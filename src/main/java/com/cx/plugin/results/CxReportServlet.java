@@ -0,0 +1,127 @@
+package com.cx.plugin.results;
+
+import com.atlassian.bamboo.plan.PlanKeys;
+import com.atlassian.bamboo.plan.PlanResultKey;
+import com.atlassian.bamboo.security.BambooPermissionManager;
+import com.atlassian.bamboo.security.acegi.acls.BambooPermission;
+import com.atlassian.spring.container.ContainerManager;
+import com.cx.plugin.client.CxReportDownloader;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.xml.bind.DatatypeConverter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the CxSAST PDF reports generated by the {@link CxPdfReportWorker} to users who may view the build.
+ * <p>
+ * The file is written to the response with {@link FileChannel#transferTo}. Single byte ranges are supported so
+ * interrupted downloads can be resumed, and the report's SHA-256 is sent as ETag and Digest.
+ */
+public class CxReportServlet extends HttpServlet {
+
+    private static final Pattern BYTE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    private static final Pattern BUILD_RESULT_KEY = Pattern.compile("[A-Z0-9_]+(-[A-Z0-9_]+)+-\\d+");
+
+    @Override
+    protected void doHead(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        doGet(req, resp);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        String buildResultKey = req.getParameter("buildResultKey");
+        if (buildResultKey == null || !BUILD_RESULT_KEY.matcher(buildResultKey).matches()) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid build result key");
+            return;
+        }
+        PlanResultKey planResultKey = PlanKeys.getPlanResultKey(buildResultKey);
+        BambooPermissionManager permissionManager = (BambooPermissionManager) ContainerManager.getComponent("bambooPermissionManager");
+        if (!permissionManager.hasPlanPermission(BambooPermission.READ, planResultKey.getPlanKey())) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        File file = CxPdfReportWorker.reportFile(buildResultKey);
+        if (!file.isFile()) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "No PDF report for " + buildResultKey);
+            return;
+        }
+
+        String sha256 = CxReportDownloader.readChecksum(file);
+        String etag = sha256 == null ? null : "\"" + sha256 + "\"";
+        if (etag != null) {
+            resp.setHeader("ETag", etag);
+            if (etag.equals(req.getHeader("If-None-Match"))) {
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+        }
+
+        long length = file.length();
+        long start = 0;
+        long end = length - 1;
+        String range = req.getHeader("Range");
+        //a range is only honoured for the same report the client started with
+        String ifRange = req.getHeader("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            Matcher matcher = BYTE_RANGE.matcher(range);
+            if (!matcher.matches() || matcher.group(1).isEmpty() && matcher.group(2).isEmpty()) {
+                resp.setHeader("Content-Range", "bytes */" + length);
+                resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (matcher.group(1).isEmpty()) {
+                //the last n bytes
+                start = Math.max(0, length - Long.parseLong(matcher.group(2)));
+            } else {
+                start = Long.parseLong(matcher.group(1));
+                if (!matcher.group(2).isEmpty()) {
+                    end = Math.min(end, Long.parseLong(matcher.group(2)));
+                }
+            }
+            if (start > end) {
+                resp.setHeader("Content-Range", "bytes */" + length);
+                resp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            resp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            resp.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+        }
+
+        resp.setContentType("application/pdf");
+        resp.setHeader("Accept-Ranges", "bytes");
+        resp.setHeader("Content-Disposition", "attachment; filename=\"CxSASTReport_" + buildResultKey + ".pdf\"");
+        resp.setHeader("Content-Length", String.valueOf(end - start + 1));
+        if (sha256 != null && start == 0 && end == length - 1) {
+            resp.setHeader("Digest", "SHA-256=" + DatatypeConverter.printBase64Binary(DatatypeConverter.parseHexBinary(sha256)));
+        }
+        if ("HEAD".equals(req.getMethod())) {
+            return;
+        }
+
+        //from the file channel to the response in small chunks, the report is never held in memory
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            WritableByteChannel out = Channels.newChannel(resp.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long transferred = channel.transferTo(position, end - position + 1, out);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
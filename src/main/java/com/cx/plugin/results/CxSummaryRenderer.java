@@ -0,0 +1,176 @@
+package com.cx.plugin.results;
+
+import com.cx.plugin.dto.CxScanSummary;
+import com.cx.plugin.utils.CxGlobalSettings;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.cx.plugin.utils.CxParam.*;
+
+/**
+ * Renders the result summary panels from the compact summary stored with each build.
+ * <p>
+ * Results of a finished build never change, so rendered fragments are kept in a small LRU cache keyed by build
+ * result key. Builds that ran with an older plugin version still carry their full HTML report, which is returned as is.
+ */
+public class CxSummaryRenderer {
+
+    private static final int MAX_CACHED_FRAGMENTS = 500;
+    private static final String TEMPLATE_DIR = "/com/cx/plugin/summary/";
+    private static final String PENDING_HTML = "<div class=\"cx-summary\"><h2>Checkmarx Scan Results</h2>" +
+            "<p>The scan is still running. Results will be shown here when it is done.</p></div>";
+    private static final String UNAVAILABLE_HTML = "<div class=\"cx-summary\"><h2>Checkmarx Scan Results</h2>" +
+            "<p>The results of the scan are not available: %s</p></div>";
+
+    private static final CxSummaryRenderer INSTANCE = new CxSummaryRenderer();
+
+    private final CxSummaryTemplate summaryTemplate = CxSummaryTemplate.load(TEMPLATE_DIR + "scanSummary.html");
+    private final CxSummaryTemplate sastTemplate = CxSummaryTemplate.load(TEMPLATE_DIR + "sastSection.html");
+    private final CxSummaryTemplate osaTemplate = CxSummaryTemplate.load(TEMPLATE_DIR + "osaSection.html");
+    private final CxSummaryTemplate thresholdTemplate = CxSummaryTemplate.load(TEMPLATE_DIR + "thresholdSection.html");
+    private final CxSummaryTemplate reportTemplate = CxSummaryTemplate.load(TEMPLATE_DIR + "reportSection.html");
+    private final CxSummaryTemplate policyTemplate = CxSummaryTemplate.load(TEMPLATE_DIR + "policySection.html");
+    private final CxSummaryTemplate cancelledTemplate = CxSummaryTemplate.load(TEMPLATE_DIR + "cancelledSection.html");
+
+    private final Map<String, String> fragments = Collections.synchronizedMap(new LinkedHashMap<String, String>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED_FRAGMENTS;
+        }
+    });
+
+    private CxSummaryRenderer() {
+    }
+
+    public static CxSummaryRenderer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the summary HTML of a build, or null when the build has no Checkmarx results
+     */
+    public String getHtml(String buildResultKey, Map<String, String> customBuildData) {
+        String legacy = customBuildData.get(HTML_REPORT);
+        if (legacy != null) {
+            return legacy;
+        }
+        String html = fragments.get(buildResultKey);
+        if (html != null) {
+            return html;
+        }
+        CxScanSummary summary = CxScanSummary.fromCustomData(customBuildData);
+        if (summary == null) {
+            //an asynchronous scan whose results were not collected yet, not cached
+            String unavailable = customBuildData.get(PENDING_UNAVAILABLE);
+            if (unavailable != null) {
+                return String.format(UNAVAILABLE_HTML, StringEscapeUtils.escapeHtml(unavailable));
+            }
+            return customBuildData.containsKey(PENDING_TASK_ID) ? PENDING_HTML : null;
+        }
+        html = render(summary, buildResultKey, customBuildData.get(PDF_REPORT_STATE));
+        fragments.put(buildResultKey, html);
+        return html;
+    }
+
+    /**
+     * Drops the rendered fragment of a build whose custom data changed.
+     */
+    public void invalidate(String buildResultKey) {
+        fragments.remove(buildResultKey);
+    }
+
+    public String render(CxScanSummary summary) {
+        return render(summary, null, null);
+    }
+
+    private String render(CxScanSummary summary, String buildResultKey, String reportState) {
+        Map<String, String> sections = new HashMap<String, String>();
+        sections.put("sast", "");
+        sections.put("osa", "");
+        sections.put("report", reportState == null ? "" : renderReportSection(buildResultKey, reportState));
+        if (summary.isSastEnabled()) {
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put("high", summary.getSastHigh());
+            values.put("medium", summary.getSastMedium());
+            values.put("low", summary.getSastLow());
+            values.put("scanId", summary.getSastScanId());
+            values.put("scanLink", summary.getSastScanLink());
+            values.put("projectLink", summary.getSastProjectLink());
+            sections.put("sast", renderSection(sastTemplate, values));
+        } else if (summary.isSastCancelled()) {
+            sections.put("sast", renderCancelled("CxSAST"));
+        }
+        if (summary.isOsaEnabled()) {
+            Map<String, Object> values = new HashMap<String, Object>();
+            values.put("high", summary.getOsaHigh());
+            values.put("medium", summary.getOsaMedium());
+            values.put("low", summary.getOsaLow());
+            values.put("scanId", summary.getOsaScanId());
+            values.put("projectLink", summary.getOsaProjectLink());
+            Map<String, String> policy = new HashMap<String, String>();
+            policy.put("policy", summary.isOsaPolicyEnforced() ? renderPolicy(summary.getOsaPolicyViolations()) : "");
+            sections.put("osa", renderSection(osaTemplate, values, policy));
+        } else if (summary.isOsaCancelled()) {
+            sections.put("osa", renderCancelled("CxOSA"));
+        }
+        Map<String, Object> threshold = new HashMap<String, Object>();
+        threshold.put("cssClass", summary.isThresholdFailed() ? "cx-threshold-failed" : "cx-threshold-passed");
+        threshold.put("status", !summary.isThresholdFailed() ? "Passed" :
+                summary.getThresholdDescription() == null ? "Failed" : "Failed: " + summary.getThresholdDescription());
+        sections.put("threshold", renderSection(thresholdTemplate, threshold));
+
+        StringBuilder sb = new StringBuilder(2048);
+        summaryTemplate.render(sb, Collections.<String, Object>emptyMap(), sections);
+        return sb.toString();
+    }
+
+    private String renderReportSection(String buildResultKey, String reportState) {
+        Map<String, String> raw = new HashMap<String, String>();
+        if (PDF_REPORT_READY.equals(reportState)) {
+            String baseUrl = "";
+            try {
+                baseUrl = CxGlobalSettings.get().getBaseUrl();
+            } catch (Exception ignored) {
+                //a link relative to the server root
+            }
+            raw.put("content", "<a href=\"" + StringEscapeUtils.escapeHtml(baseUrl + PDF_REPORT_SERVLET + "?buildResultKey=" + buildResultKey) +
+                    "\">Download the CxSAST PDF report</a>");
+        } else if (PDF_REPORT_PENDING.equals(reportState)) {
+            raw.put("content", "The PDF report is being generated.");
+        } else {
+            raw.put("content", "The PDF report could not be generated.");
+        }
+        StringBuilder sb = new StringBuilder(512);
+        reportTemplate.render(sb, Collections.<String, Object>emptyMap(), raw);
+        return sb.toString();
+    }
+
+    private String renderPolicy(int violations) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("cssClass", violations > 0 ? "cx-threshold-failed" : "cx-threshold-passed");
+        values.put("status", violations > 0 ? "Violated" : "Compliant");
+        values.put("violations", violations);
+        return renderSection(policyTemplate, values);
+    }
+
+    private String renderCancelled(String engine) {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put("engine", engine);
+        return renderSection(cancelledTemplate, values);
+    }
+
+    private String renderSection(CxSummaryTemplate template, Map<String, Object> values) {
+        return renderSection(template, values, null);
+    }
+
+    private String renderSection(CxSummaryTemplate template, Map<String, Object> values, Map<String, String> raw) {
+        StringBuilder sb = new StringBuilder(1024);
+        template.render(sb, values, raw);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,79 @@
+package com.cx.plugin.results;
+
+import org.apache.commons.lang.StringEscapeUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An HTML template parsed once into literal text and ${name} placeholders, so rendering is a single append pass.
+ * Values are HTML escaped unless passed as raw.
+ */
+public class CxSummaryTemplate {
+
+    private final List<String> literals = new ArrayList<String>();
+    private final List<String> placeholders = new ArrayList<String>();
+
+    private CxSummaryTemplate(String text) {
+        int pos = 0;
+        int start;
+        while ((start = text.indexOf("${", pos)) >= 0) {
+            int end = text.indexOf('}', start);
+            if (end < 0) {
+                break;
+            }
+            literals.add(text.substring(pos, start));
+            placeholders.add(text.substring(start + 2, end));
+            pos = end + 1;
+        }
+        literals.add(text.substring(pos));
+    }
+
+    public static CxSummaryTemplate load(String resource) {
+        InputStream in = CxSummaryTemplate.class.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IllegalStateException("Missing summary template: " + resource);
+        }
+        try {
+            Reader reader = new InputStreamReader(in, Charset.forName("UTF-8"));
+            StringBuilder sb = new StringBuilder();
+            char[] buffer = new char[4096];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, read);
+            }
+            return new CxSummaryTemplate(sb.toString());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read summary template: " + resource, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * @param values placeholder values, escaped
+     * @param raw    placeholder values inserted as is (rendered sections)
+     */
+    public void render(StringBuilder sb, Map<String, ?> values, Map<String, String> raw) {
+        for (int i = 0; i < placeholders.size(); i++) {
+            sb.append(literals.get(i));
+            String name = placeholders.get(i);
+            if (raw != null && raw.containsKey(name)) {
+                sb.append(raw.get(name));
+            } else {
+                Object value = values.get(name);
+                sb.append(value == null ? "" : StringEscapeUtils.escapeHtml(value.toString()));
+            }
+        }
+        sb.append(literals.get(literals.size() - 1));
+    }
+}
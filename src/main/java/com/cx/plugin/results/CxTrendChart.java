@@ -0,0 +1,136 @@
+package com.cx.plugin.results;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Draws the trend of a job's Checkmarx results as inline SVG line charts: vulnerability counts per build, and the
+ * task duration when it is known.
+ */
+public class CxTrendChart {
+
+    private static final int MAX_BUILDS = 1000;
+    private static final int WIDTH = 600;
+    private static final int HEIGHT = 160;
+    private static final int MARGIN = 30;
+
+    private CxTrendChart() {
+    }
+
+    /**
+     * @param recorded the job's builds by build number, as read from {@link CxTrendStore#read}
+     * @return the charts of the latest builds, or null when fewer than two builds were recorded
+     */
+    public static String render(List<CxTrendStore.Point> recorded) {
+        List<CxTrendStore.Point> points = recorded.size() > MAX_BUILDS ? recorded.subList(recorded.size() - MAX_BUILDS, recorded.size()) : recorded;
+        if (points.size() < 2) {
+            return null;
+        }
+        boolean sast = false;
+        boolean osa = false;
+        boolean duration = false;
+        for (CxTrendStore.Point point : points) {
+            sast |= point.isSastEnabled();
+            osa |= point.isOsaEnabled();
+            duration |= point.getDurationSeconds() > 0;
+        }
+
+        StringBuilder sb = new StringBuilder(8 * 1024);
+        sb.append("<div class=\"cx-trend\"><h3>Checkmarx Trend (last ").append(points.size()).append(" builds)</h3>");
+        List<Series> vulnerabilities = new ArrayList<Series>();
+        if (sast) {
+            vulnerabilities.add(new Series("SAST High", "#d04437", 0));
+            vulnerabilities.add(new Series("SAST Medium", "#f6c342", 1));
+            vulnerabilities.add(new Series("SAST Low", "#8b8b8b", 2));
+        }
+        if (osa) {
+            vulnerabilities.add(new Series("OSA High", "#8c1c13", 3));
+            vulnerabilities.add(new Series("OSA Medium", "#b8860b", 4));
+            vulnerabilities.add(new Series("OSA Low", "#4a6785", 5));
+        }
+        chart(sb, points, vulnerabilities);
+        if (duration) {
+            List<Series> durations = new ArrayList<Series>();
+            durations.add(new Series("Duration (s)", "#3572b0", 6));
+            chart(sb, points, durations);
+        }
+        return sb.append("</div>").toString();
+    }
+
+    private static void chart(StringBuilder sb, List<CxTrendStore.Point> points, List<Series> series) {
+        int max = 1;
+        for (CxTrendStore.Point point : points) {
+            for (Series s : series) {
+                if (s.isRecorded(point)) {
+                    max = Math.max(max, s.value(point));
+                }
+            }
+        }
+        int first = points.get(0).getBuildNumber();
+        int last = points.get(points.size() - 1).getBuildNumber();
+        double xScale = (WIDTH - 2.0 * MARGIN) / Math.max(1, last - first);
+        double yScale = (HEIGHT - 2.0 * MARGIN) / max;
+
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(WIDTH).append("\" height=\"").append(HEIGHT)
+                .append("\" viewBox=\"0 0 ").append(WIDTH).append(' ').append(HEIGHT).append("\" font-size=\"10\">");
+        sb.append("<line x1=\"").append(MARGIN).append("\" y1=\"").append(HEIGHT - MARGIN).append("\" x2=\"").append(WIDTH - MARGIN)
+                .append("\" y2=\"").append(HEIGHT - MARGIN).append("\" stroke=\"#ccc\"/>");
+        sb.append("<text x=\"").append(MARGIN).append("\" y=\"").append(HEIGHT - MARGIN + 14).append("\">#").append(first).append("</text>");
+        sb.append("<text x=\"").append(WIDTH - MARGIN).append("\" y=\"").append(HEIGHT - MARGIN + 14)
+                .append("\" text-anchor=\"end\">#").append(last).append("</text>");
+        sb.append("<text x=\"").append(MARGIN - 4).append("\" y=\"").append(MARGIN).append("\" text-anchor=\"end\">").append(max).append("</text>");
+
+        int legendX = MARGIN;
+        for (Series s : series) {
+            sb.append("<polyline fill=\"none\" stroke-width=\"1.5\" stroke=\"").append(s.color).append("\" points=\"");
+            for (CxTrendStore.Point point : points) {
+                //a build that did not run the engine (or cancelled it) has no counts, not zero counts
+                if (!s.isRecorded(point)) {
+                    continue;
+                }
+                long x = Math.round(MARGIN + (point.getBuildNumber() - first) * xScale);
+                long y = Math.round(HEIGHT - MARGIN - s.value(point) * yScale);
+                sb.append(x).append(',').append(y).append(' ');
+            }
+            sb.append("\"/>");
+            sb.append("<text x=\"").append(legendX).append("\" y=\"12\" fill=\"").append(s.color).append("\">").append(s.label).append("</text>");
+            legendX += 90;
+        }
+        sb.append("</svg>");
+    }
+
+    private static class Series {
+        final String label;
+        final String color;
+        final int field;
+
+        Series(String label, String color, int field) {
+            this.label = label;
+            this.color = color;
+            this.field = field;
+        }
+
+        boolean isRecorded(CxTrendStore.Point point) {
+            return field < 3 ? point.isSastEnabled() : field < 6 ? point.isOsaEnabled() : true;
+        }
+
+        int value(CxTrendStore.Point point) {
+            switch (field) {
+                case 0:
+                    return point.getSastHigh();
+                case 1:
+                    return point.getSastMedium();
+                case 2:
+                    return point.getSastLow();
+                case 3:
+                    return point.getOsaHigh();
+                case 4:
+                    return point.getOsaMedium();
+                case 5:
+                    return point.getOsaLow();
+                default:
+                    return point.getDurationSeconds();
+            }
+        }
+    }
+}
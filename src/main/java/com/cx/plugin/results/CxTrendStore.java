@@ -0,0 +1,372 @@
+package com.cx.plugin.results;
+
+import com.cx.plugin.dto.CxScanSummary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.cx.plugin.utils.CxParam.CX_TREND_DIR;
+import static com.cx.plugin.utils.CxPluginUtils.resolveHomeDir;
+
+/**
+ * Per job history of Checkmarx results, so the plan result panel can draw trends without loading the custom data
+ * of every past build.
+ * <p>
+ * Every job has one append-only file under the Bamboo home. After a 4 byte header, each build is one record:
+ * a length byte followed by varints holding the differences to the previous record (build number, time in seconds,
+ * the six vulnerability counts) plus the flags and the task duration. A record is typically 10 to 15 bytes, so the
+ * history of thousands of builds is read in one short sequential pass. The first record that cannot be decoded (cut
+ * short by a crash, or corrupt) ends the valid data: the records after it depend on it, and it is cut off together
+ * with them on the next append.
+ * <p>
+ * Records are appended when the results are known, which for asynchronous scans is not build order, and a rerun
+ * of a build appends its build number again; {@link #read} returns one point per build, in build order.
+ */
+public class CxTrendStore {
+
+    private static final byte[] MAGIC = {'C', 'X', 'T', '1'};
+    private static final String SUFFIX = ".cxtrend";
+    private static final int FLAG_SAST = 1;
+    private static final int FLAG_OSA = 2;
+    private static final int FLAG_FAILED = 4;
+
+    private static final CxTrendStore INSTANCE = new CxTrendStore();
+
+    private final Logger log = LoggerFactory.getLogger(CxTrendStore.class);
+    //the last record and file length of every job appended to, so an append does not read the file again
+    private final ConcurrentMap<String, Tail> tails = new ConcurrentHashMap<String, Tail>();
+    private volatile File dir;
+
+    private CxTrendStore() {
+    }
+
+    public static CxTrendStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records the results of a build. Failures are logged, a missing trend point never fails the build.
+     */
+    public void append(String jobKey, int buildNumber, long timeMillis, CxScanSummary summary, long durationMillis) {
+        Point point = new Point(buildNumber, timeMillis / 1000, flags(summary),
+                summary.getSastHigh(), summary.getSastMedium(), summary.getSastLow(),
+                summary.getOsaHigh(), summary.getOsaMedium(), summary.getOsaLow(), (int) (durationMillis / 1000));
+        Tail tail = tailOf(jobKey);
+        synchronized (tail) {
+            try {
+                File file = fileOf(jobKey);
+                if (!tail.loaded || tail.length != file.length()) {
+                    tail.load(file);
+                }
+                ByteArrayOutputStream record = new ByteArrayOutputStream(32);
+                encode(record, tail.last, point);
+                OutputStream out = new FileOutputStream(file, true);
+                try {
+                    if (tail.length == 0) {
+                        out.write(MAGIC);
+                        tail.length = MAGIC.length;
+                    }
+                    out.write(record.size());
+                    record.writeTo(out);
+                } finally {
+                    out.close();
+                }
+                tail.length += 1 + record.size();
+                tail.last = point;
+            } catch (IOException e) {
+                tail.loaded = false;
+                log.warn("Failed to record Checkmarx trend of " + jobKey + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * @return the recorded builds of a job by build number, the latest record of a build number winning; empty when
+     * there are none
+     */
+    public List<Point> read(String jobKey) {
+        List<Point> points = new ArrayList<Point>();
+        try {
+            readFile(fileOf(jobKey), points);
+        } catch (IOException e) {
+            log.warn("Failed to read Checkmarx trend of " + jobKey + ": " + e.getMessage());
+        }
+        return byBuildNumber(points);
+    }
+
+    static List<Point> byBuildNumber(List<Point> recorded) {
+        Map<Integer, Point> builds = new TreeMap<Integer, Point>();
+        for (Point point : recorded) {
+            builds.put(point.buildNumber, point);
+        }
+        return new ArrayList<Point>(builds.values());
+    }
+
+    /**
+     * Reads every valid record of the file into points. A file that does not start with the header has no valid
+     * records.
+     *
+     * @return the length of the file up to the end of the last valid record
+     */
+    private static long readFile(File file, List<Point> points) throws IOException {
+        if (!file.isFile()) {
+            return 0;
+        }
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024));
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            try {
+                in.readFully(magic);
+            } catch (EOFException e) {
+                return 0;
+            }
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (magic[i] != MAGIC[i]) {
+                    return 0;
+                }
+            }
+            long length = MAGIC.length;
+            Point last = null;
+            byte[] record = new byte[255];
+            int size;
+            while ((size = in.read()) != -1) {
+                try {
+                    in.readFully(record, 0, size);
+                } catch (EOFException e) {
+                    break;
+                }
+                Point point = decodeRecord(record, size, last);
+                if (point == null) {
+                    break;
+                }
+                last = point;
+                points.add(last);
+                length += 1 + size;
+            }
+            return length;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return the point, or null when the record is corrupt
+     */
+    static Point decodeRecord(byte[] record, int size, Point previous) {
+        ByteArrayInputStream in = new ByteArrayInputStream(record, 0, size);
+        try {
+            Point point = decode(in, previous);
+            //a record has exactly the bytes of its fields
+            return in.available() == 0 ? point : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    static void encode(OutputStream out, Point previous, Point point) {
+        Point base = previous == null ? Point.ZERO : previous;
+        writeSigned(out, (long) point.buildNumber - base.buildNumber);
+        writeSigned(out, point.timeSeconds - base.timeSeconds);
+        writeUnsigned(out, point.flags);
+        writeSigned(out, (long) point.sastHigh - base.sastHigh);
+        writeSigned(out, (long) point.sastMedium - base.sastMedium);
+        writeSigned(out, (long) point.sastLow - base.sastLow);
+        writeSigned(out, (long) point.osaHigh - base.osaHigh);
+        writeSigned(out, (long) point.osaMedium - base.osaMedium);
+        writeSigned(out, (long) point.osaLow - base.osaLow);
+        writeUnsigned(out, Math.max(0, point.durationSeconds));
+    }
+
+    private static Point decode(InputStream in, Point previous) throws IOException {
+        Point base = previous == null ? Point.ZERO : previous;
+        return new Point(
+                (int) (base.buildNumber + readSigned(in)),
+                base.timeSeconds + readSigned(in),
+                (int) readUnsigned(in),
+                (int) (base.sastHigh + readSigned(in)),
+                (int) (base.sastMedium + readSigned(in)),
+                (int) (base.sastLow + readSigned(in)),
+                (int) (base.osaHigh + readSigned(in)),
+                (int) (base.osaMedium + readSigned(in)),
+                (int) (base.osaLow + readSigned(in)),
+                (int) readUnsigned(in));
+    }
+
+    //zigzag, so small negative differences stay short
+    private static void writeSigned(OutputStream out, long value) {
+        writeUnsigned(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static void writeUnsigned(OutputStream out, long value) {
+        try {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        } catch (IOException e) {
+            //written to memory
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long readSigned(InputStream in) throws IOException {
+        long value = readUnsigned(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readUnsigned(InputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Truncated Checkmarx trend record");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed Checkmarx trend record");
+    }
+
+    private static int flags(CxScanSummary summary) {
+        return (summary.isSastEnabled() ? FLAG_SAST : 0) | (summary.isOsaEnabled() ? FLAG_OSA : 0) |
+                (summary.isThresholdFailed() ? FLAG_FAILED : 0);
+    }
+
+    private Tail tailOf(String jobKey) {
+        Tail tail = tails.get(jobKey);
+        if (tail == null) {
+            Tail created = new Tail();
+            tail = tails.putIfAbsent(jobKey, created);
+            if (tail == null) {
+                tail = created;
+            }
+        }
+        return tail;
+    }
+
+    private File fileOf(String jobKey) throws IOException {
+        File trendDir = dir;
+        if (trendDir == null) {
+            trendDir = resolveHomeDir(CX_TREND_DIR);
+            dir = trendDir;
+        }
+        return new File(trendDir, jobKey.replaceAll("[^A-Za-z0-9_\\-]", "_") + SUFFIX);
+    }
+
+    private static class Tail {
+        boolean loaded;
+        long length;
+        Point last;
+
+        /**
+         * Finds the last valid record, and cuts off everything after it.
+         */
+        void load(File file) throws IOException {
+            List<Point> points = new ArrayList<Point>();
+            length = readFile(file, points);
+            last = points.isEmpty() ? null : points.get(points.size() - 1);
+            if (file.isFile() && file.length() != length) {
+                RandomAccessFile raf = new RandomAccessFile(file, "rw");
+                try {
+                    raf.setLength(length);
+                } finally {
+                    raf.close();
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    /**
+     * The Checkmarx results of one build.
+     */
+    public static class Point {
+        static final Point ZERO = new Point(0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+        final int buildNumber;
+        final long timeSeconds;
+        final int flags;
+        final int sastHigh;
+        final int sastMedium;
+        final int sastLow;
+        final int osaHigh;
+        final int osaMedium;
+        final int osaLow;
+        final int durationSeconds;
+
+        Point(int buildNumber, long timeSeconds, int flags, int sastHigh, int sastMedium, int sastLow,
+              int osaHigh, int osaMedium, int osaLow, int durationSeconds) {
+            this.buildNumber = buildNumber;
+            this.timeSeconds = timeSeconds;
+            this.flags = flags;
+            this.sastHigh = sastHigh;
+            this.sastMedium = sastMedium;
+            this.sastLow = sastLow;
+            this.osaHigh = osaHigh;
+            this.osaMedium = osaMedium;
+            this.osaLow = osaLow;
+            this.durationSeconds = durationSeconds;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        public long getTimeMillis() {
+            return timeSeconds * 1000;
+        }
+
+        public boolean isSastEnabled() {
+            return (flags & FLAG_SAST) != 0;
+        }
+
+        public boolean isOsaEnabled() {
+            return (flags & FLAG_OSA) != 0;
+        }
+
+        public boolean isThresholdFailed() {
+            return (flags & FLAG_FAILED) != 0;
+        }
+
+        public int getSastHigh() {
+            return sastHigh;
+        }
+
+        public int getSastMedium() {
+            return sastMedium;
+        }
+
+        public int getSastLow() {
+            return sastLow;
+        }
+
+        public int getOsaHigh() {
+            return osaHigh;
+        }
+
+        public int getOsaMedium() {
+            return osaMedium;
+        }
+
+        public int getOsaLow() {
+            return osaLow;
+        }
+
+        /**
+         * @return the duration of the Checkmarx task in seconds, 0 when unknown (asynchronous scans)
+         */
+        public int getDurationSeconds() {
+            return durationSeconds;
+        }
+    }
+}
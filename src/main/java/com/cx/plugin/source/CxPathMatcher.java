@@ -0,0 +1,149 @@
+package com.cx.plugin.source;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A set of ant style wildcard patterns compiled once, matched against '/' separated paths.
+ * Matching is case sensitive, like the filter the Checkmarx client applies when it zips the sources.
+ * <p>
+ * The shapes that make up almost every filter list are answered with hash lookups instead of pattern matching:
+ * extension patterns ({@code **&#47;*.class}), file name patterns ({@code **&#47;Thumbs.db}) and directory patterns
+ * ({@code **&#47;node_modules/**&#47;*}). Directory patterns also let a walk skip a whole directory at once.
+ * Any other pattern is compiled to a single regular expression.
+ */
+public class CxPathMatcher {
+
+    private static final Pattern SUFFIX = Pattern.compile("\\*\\*/\\*(\\.[^*?/]+)");
+    private static final Pattern FILE_NAME = Pattern.compile("\\*\\*/([^*?/]+)");
+    private static final Pattern DIR_NAME = Pattern.compile("\\*\\*/([^*?/]+)/\\*\\*(?:/\\*)?");
+    private static final Pattern DIR_PREFIX = Pattern.compile("(.+)/\\*\\*(?:/\\*)?");
+
+    private boolean matchAll = false;
+    private final Set<String> suffixes = new HashSet<String>();
+    private final Set<String> fileNames = new HashSet<String>();
+    private final Set<String> dirNames = new HashSet<String>();
+    private final List<Pattern> dirPrefixes = new ArrayList<Pattern>();
+    private final List<Pattern> general = new ArrayList<Pattern>();
+
+    public CxPathMatcher(List<String> patterns) {
+        for (String pattern : patterns) {
+            compile(pattern);
+        }
+    }
+
+    private void compile(String pattern) {
+        if ("**/*".equals(pattern) || "**".equals(pattern)) {
+            matchAll = true;
+            return;
+        }
+        Matcher m = SUFFIX.matcher(pattern);
+        if (m.matches()) {
+            suffixes.add(m.group(1));
+            return;
+        }
+        m = FILE_NAME.matcher(pattern);
+        if (m.matches()) {
+            fileNames.add(m.group(1));
+            return;
+        }
+        m = DIR_NAME.matcher(pattern);
+        if (m.matches()) {
+            dirNames.add(m.group(1));
+            return;
+        }
+        m = DIR_PREFIX.matcher(pattern);
+        if (m.matches()) {
+            dirPrefixes.add(Pattern.compile(toRegex(m.group(1))));
+            return;
+        }
+        general.add(Pattern.compile(toRegex(pattern)));
+    }
+
+    /**
+     * @return true when every file beneath the directory matches, so a walk does not need to enter it
+     */
+    public boolean matchesDirectory(String dirPath, String dirName) {
+        if (matchAll || dirNames.contains(dirName)) {
+            return true;
+        }
+        for (Pattern prefix : dirPrefixes) {
+            if (prefix.matcher(dirPath).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean matchesFile(String path) {
+        if (matchAll) {
+            return true;
+        }
+        String name = path.substring(path.lastIndexOf('/') + 1);
+        if (fileNames.contains(name)) {
+            return true;
+        }
+        if (!suffixes.isEmpty()) {
+            for (int dot = name.indexOf('.'); dot >= 0; dot = name.indexOf('.', dot + 1)) {
+                if (suffixes.contains(name.substring(dot))) {
+                    return true;
+                }
+            }
+        }
+        if (!dirNames.isEmpty() || !dirPrefixes.isEmpty()) {
+            int start = 0;
+            for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+                if (matchesDirectory(path.substring(0, slash), path.substring(start, slash))) {
+                    return true;
+                }
+                start = slash + 1;
+            }
+        }
+        for (Pattern pattern : general) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public String describe() {
+        return (matchAll ? "match all, " : "") + suffixes.size() + " extension, " + fileNames.size() + " file name, " +
+                (dirNames.size() + dirPrefixes.size()) + " directory and " + general.size() + " other patterns";
+    }
+
+    /**
+     * Ant style wildcards to a regular expression: '**&#47;' matches any number of directories, '*' and '?' stay within
+     * a single path segment.
+     */
+    static String toRegex(String glob) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            if (glob.startsWith("**/", i)) {
+                sb.append("(?:.*/)?");
+                i += 3;
+            } else if (glob.startsWith("**", i)) {
+                sb.append(".*");
+                i += 2;
+            } else {
+                char c = glob.charAt(i);
+                if (c == '*') {
+                    sb.append("[^/]*");
+                } else if (c == '?') {
+                    sb.append("[^/]");
+                } else if ("\\.[]{}()+-^$|".indexOf(c) >= 0) {
+                    sb.append('\\').append(c);
+                } else {
+                    sb.append(c);
+                }
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,97 @@
+package com.cx.plugin.source;
+
+import org.apache.commons.lang.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The CxSAST include/exclude rules of a build: the comma separated folder exclusions and the wildcard filter
+ * patterns, where patterns starting with "!" exclude. Folder exclusions are converted to exclude patterns the same
+ * way the Checkmarx client does before zipping the sources.
+ * <p>
+ * The patterns are compiled once into a {@link CxPathMatcher} per side, so the per path cost does not grow with
+ * the length of the exclusion list and excluded directories can be pruned as a whole.
+ */
+public class CxSourceFilter {
+
+    private static final String INCLUDE_ALL = "**/*";
+
+    private final List<String> includes = new ArrayList<String>();
+    private final List<String> excludes = new ArrayList<String>();
+    private final CxPathMatcher includeMatcher;
+    private final CxPathMatcher excludeMatcher;
+
+    public CxSourceFilter(String folderExclusions, String filterPattern) {
+        for (String pattern : split(filterPattern)) {
+            if (pattern.startsWith("!")) {
+                excludes.add(normalize(pattern.substring(1)));
+            } else {
+                includes.add(normalize(pattern));
+            }
+        }
+        for (String folder : split(folderExclusions)) {
+            String normalized = normalize(folder);
+            while (normalized.startsWith("/")) {
+                normalized = normalized.substring(1);
+            }
+            if (!normalized.isEmpty()) {
+                excludes.add("**/" + normalized + "/**/*");
+            }
+        }
+        if (includes.isEmpty()) {
+            includes.add(INCLUDE_ALL);
+        }
+        includeMatcher = new CxPathMatcher(includes);
+        excludeMatcher = new CxPathMatcher(excludes);
+    }
+
+    /**
+     * @param path a file path relative to the source directory, separated by '/'
+     */
+    public boolean isIncluded(String path) {
+        return includeMatcher.matchesFile(path) && !excludeMatcher.matchesFile(path);
+    }
+
+    /**
+     * @param path a directory path relative to the source directory, separated by '/'
+     * @return true when no file beneath the directory can be included
+     */
+    public boolean isExcludedDirectory(String path, String name) {
+        return excludeMatcher.matchesDirectory(path, name);
+    }
+
+    public String describe() {
+        return "includes: " + includeMatcher.describe() + "; excludes: " + excludeMatcher.describe();
+    }
+
+    public List<String> getIncludes() {
+        return includes;
+    }
+
+    public List<String> getExcludes() {
+        return excludes;
+    }
+
+    private static List<String> split(String patterns) {
+        List<String> ret = new ArrayList<String>();
+        if (StringUtils.isBlank(patterns)) {
+            return ret;
+        }
+        for (String pattern : patterns.split(",")) {
+            String trimmed = pattern.trim();
+            if (!trimmed.isEmpty()) {
+                ret.add(trimmed);
+            }
+        }
+        return ret;
+    }
+
+    private static String normalize(String pattern) {
+        String ret = pattern.trim().replace('\\', '/');
+        while (ret.endsWith("/")) {
+            ret = ret.substring(0, ret.length() - 1);
+        }
+        return ret;
+    }
+}
@@ -0,0 +1,347 @@
+package com.cx.plugin.source;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.cx.plugin.utils.CxPluginUtils.newSha256;
+import static com.cx.plugin.utils.CxPluginUtils.toHex;
+
+/**
+ * Content hashes of every file the CxSAST scan would include, and a single digest over all of them plus the
+ * scan settings that affect the results.
+ * <p>
+ * The source directory is walked with fork/join: every directory is a task, and files are hashed in parallel
+ * in batches of {@link #FILES_PER_TASK}. The filter is applied during the walk, and excluded directories are not
+ * entered at all. The per file hashes are kept in
+ * an index file next to the scan result store; a file whose size and modification time did not change since the
+ * index was written is not read again.
+ */
+public class CxSourceManifest {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FILES_PER_TASK = 64;
+    private static final int MAX_PARALLELISM = 8;
+
+    private final String digest;
+    private final List<Entry> entries;
+    private final long totalBytes;
+    private final int rehashed;
+    private final long hashedBytes;
+    private final int prunedDirectories;
+    private final int excludedFiles;
+    private final long excludedBytes;
+    private final long walkMillis;
+    private final long digestMillis;
+
+    private CxSourceManifest(String digest, List<Entry> entries, long totalBytes, Walk walk, long walkMillis, long digestMillis) {
+        this.digest = digest;
+        this.entries = entries;
+        this.totalBytes = totalBytes;
+        this.rehashed = walk.rehashed.get();
+        this.hashedBytes = walk.hashedBytes.get();
+        this.prunedDirectories = walk.prunedDirectories.get();
+        this.excludedFiles = walk.excludedFiles.get();
+        this.excludedBytes = walk.excludedBytes.get();
+        this.walkMillis = walkMillis;
+        this.digestMillis = digestMillis;
+    }
+
+    /**
+     * @param fingerprint the scan settings the results depend on, so a settings change never matches
+     * @param indexFile   the index of the previous manifest of this plan, may not exist
+     */
+    public static CxSourceManifest compute(File sourceDir, CxSourceFilter filter, String fingerprint, File indexFile) throws IOException {
+        Map<String, Entry> previous = readIndex(indexFile);
+
+        long walkStart = System.nanoTime();
+        Walk walk = new Walk(filter, previous);
+        ForkJoinPool pool = new ForkJoinPool(Math.min(Runtime.getRuntime().availableProcessors(), MAX_PARALLELISM));
+        List<Entry> entries;
+        try {
+            entries = pool.invoke(new DirectoryTask(walk, sourceDir, ""));
+        } catch (HashingFailedException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        long walkMillis = (System.nanoTime() - walkStart) / 1000000;
+
+        long digestStart = System.nanoTime();
+        Collections.sort(entries);
+        MessageDigest manifestDigest = newSha256();
+        manifestDigest.update(fingerprint.getBytes(UTF8));
+        long totalBytes = 0;
+        for (Entry entry : entries) {
+            totalBytes += entry.size;
+            manifestDigest.update(("\n" + entry.path + "\0" + entry.hash).getBytes(UTF8));
+        }
+        String digest = toHex(manifestDigest.digest());
+        long digestMillis = (System.nanoTime() - digestStart) / 1000000;
+
+        return new CxSourceManifest(digest, entries, totalBytes, walk, walkMillis, digestMillis);
+    }
+
+    /**
+     * Writes the index to a temporary file in the same directory and moves it into place, so builds of the plan
+     * running at the same time never read a partly written index.
+     */
+    public void saveIndex(File indexFile) throws IOException {
+        File tmp = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getAbsoluteFile().getParentFile());
+        try {
+            Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(tmp)), UTF8);
+            try {
+                for (Entry entry : entries) {
+                    writer.write(entry.path + "\t" + entry.size + "\t" + entry.modified + "\t" + entry.hash + "\n");
+                }
+            } finally {
+                writer.close();
+            }
+            try {
+                Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new IOException("Failed to write source manifest index: " + indexFile, e);
+        } finally {
+            if (tmp.exists() && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    private static Map<String, Entry> readIndex(File indexFile) {
+        Map<String, Entry> ret = new HashMap<String, Entry>();
+        if (indexFile == null || !indexFile.isFile()) {
+            return ret;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(indexFile)), UTF8));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split("\t");
+                    if (parts.length == 4) {
+                        ret.put(parts[0], new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3]));
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException | NumberFormatException e) {
+            //a broken index only means every file is hashed again
+            ret.clear();
+        }
+        return ret;
+    }
+
+    private static String hashFile(File file, byte[] buffer) throws IOException {
+        MessageDigest md = newSha256();
+        InputStream in = new FileInputStream(file);
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+            }
+        } finally {
+            in.close();
+        }
+        return toHex(md.digest());
+    }
+
+    public String getDigest() {
+        return digest;
+    }
+
+    public int getFileCount() {
+        return entries.size();
+    }
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public int getRehashed() {
+        return rehashed;
+    }
+
+    public long getHashedBytes() {
+        return hashedBytes;
+    }
+
+    public int getPrunedDirectories() {
+        return prunedDirectories;
+    }
+
+    public int getExcludedFiles() {
+        return excludedFiles;
+    }
+
+    public long getExcludedBytes() {
+        return excludedBytes;
+    }
+
+    public long getWalkMillis() {
+        return walkMillis;
+    }
+
+    public long getDigestMillis() {
+        return digestMillis;
+    }
+
+    private static class Entry implements Comparable<Entry> {
+        final String path;
+        final long size;
+        final long modified;
+        final String hash;
+
+        Entry(String path, long size, long modified, String hash) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        @Override
+        public int compareTo(Entry o) {
+            return path.compareTo(o.path);
+        }
+    }
+
+    /**
+     * State shared by all tasks of one walk.
+     */
+    private static class Walk {
+        final CxSourceFilter filter;
+        final Map<String, Entry> previous;
+        final AtomicInteger rehashed = new AtomicInteger();
+        final AtomicLong hashedBytes = new AtomicLong();
+        final AtomicInteger prunedDirectories = new AtomicInteger();
+        final AtomicInteger excludedFiles = new AtomicInteger();
+        final AtomicLong excludedBytes = new AtomicLong();
+
+        Walk(CxSourceFilter filter, Map<String, Entry> previous) {
+            this.filter = filter;
+            this.previous = previous;
+        }
+    }
+
+    private static class DirectoryTask extends RecursiveTask<List<Entry>> {
+        private final Walk walk;
+        private final File dir;
+        private final String relativePath;
+
+        DirectoryTask(Walk walk, File dir, String relativePath) {
+            this.walk = walk;
+            this.dir = dir;
+            this.relativePath = relativePath;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            File[] children = dir.listFiles();
+            List<Entry> ret = new ArrayList<Entry>();
+            if (children == null) {
+                return ret;
+            }
+            List<ForkJoinTask<List<Entry>>> subTasks = new ArrayList<ForkJoinTask<List<Entry>>>();
+            List<String> batch = new ArrayList<String>(FILES_PER_TASK);
+            for (File child : children) {
+                String childPath = relativePath.isEmpty() ? child.getName() : relativePath + "/" + child.getName();
+                if (child.isDirectory()) {
+                    if (walk.filter.isExcludedDirectory(childPath, child.getName())) {
+                        walk.prunedDirectories.incrementAndGet();
+                    } else {
+                        subTasks.add(new DirectoryTask(walk, child, childPath).fork());
+                    }
+                } else if (walk.filter.isIncluded(childPath)) {
+                    batch.add(childPath);
+                    if (batch.size() == FILES_PER_TASK) {
+                        subTasks.add(new HashFilesTask(walk, dir, batch).fork());
+                        batch = new ArrayList<String>(FILES_PER_TASK);
+                    }
+                } else {
+                    walk.excludedFiles.incrementAndGet();
+                    walk.excludedBytes.addAndGet(child.length());
+                }
+            }
+            ret.addAll(new HashFilesTask(walk, dir, batch).compute());
+            for (ForkJoinTask<List<Entry>> task : subTasks) {
+                ret.addAll(task.join());
+            }
+            return ret;
+        }
+    }
+
+    private static class HashFilesTask extends RecursiveTask<List<Entry>> {
+        private final Walk walk;
+        private final File dir;
+        private final List<String> paths;
+
+        HashFilesTask(Walk walk, File dir, List<String> paths) {
+            this.walk = walk;
+            this.dir = dir;
+            this.paths = paths;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            List<Entry> ret = new ArrayList<Entry>(paths.size());
+            byte[] buffer = null;
+            for (String path : paths) {
+                File file = new File(dir, path.substring(path.lastIndexOf('/') + 1));
+                long size = file.length();
+                long modified = file.lastModified();
+                Entry old = walk.previous.get(path);
+                String hash;
+                if (old != null && old.size == size && old.modified == modified) {
+                    hash = old.hash;
+                } else {
+                    if (buffer == null) {
+                        buffer = new byte[BUFFER_SIZE];
+                    }
+                    try {
+                        hash = hashFile(file, buffer);
+                    } catch (IOException e) {
+                        throw new HashingFailedException(e);
+                    }
+                    walk.rehashed.incrementAndGet();
+                    walk.hashedBytes.addAndGet(size);
+                }
+                ret.add(new Entry(path, size, modified, hash));
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Carries an IOException out of a fork/join task.
+     */
+    private static class HashingFailedException extends RuntimeException {
+        HashingFailedException(IOException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IOException getCause() {
+            return (IOException) super.getCause();
+        }
+    }
+}
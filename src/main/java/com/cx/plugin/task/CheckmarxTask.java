@@ -6,22 +6,40 @@ package com.cx.plugin.task;
 
 import com.atlassian.bamboo.task.*;
 import com.atlassian.bamboo.v2.build.BuildContext;
+import com.atlassian.bamboo.v2.build.BuildRepositoryChanges;
+import com.cx.plugin.client.CxScanAdmission;
+import com.cx.plugin.client.CxScanLookup;
+import com.cx.plugin.client.CxServerGuard;
+import com.cx.plugin.dto.CxScanSummary;
 import com.cx.plugin.dto.ScanResults;
 import com.cx.plugin.utils.CxAppender;
 import com.cx.plugin.utils.CxConfigHelper;
 import com.cx.plugin.utils.CxLoggerAdapter;
+import com.cx.plugin.utils.CxPhaseTimer;
+import com.cx.plugin.utils.CxThresholds;
 import com.cx.restclient.CxShragaClient;
 import com.cx.restclient.configuration.CxScanConfig;
 import com.cx.restclient.dto.ThresholdResult;
-import com.cx.restclient.exception.CxClientException;
 import com.cx.restclient.osa.dto.OSAResults;
 import com.cx.restclient.sast.dto.SASTResults;
-import org.apache.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
 
-import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static com.cx.plugin.utils.CxParam.HTML_REPORT;
+import static com.cx.plugin.utils.CxParam.CX_ORIGIN;
+import static com.cx.plugin.utils.CxParam.PDF_REPORT_PENDING;
+import static com.cx.plugin.utils.CxParam.PDF_REPORT_SCAN_ID;
+import static com.cx.plugin.utils.CxParam.PDF_REPORT_STATE;
+import static com.cx.plugin.utils.CxParam.PDF_REPORT_TASK_ID;
+import static com.cx.plugin.utils.CxParam.PENDING_OSA_SCAN_ID;
+import static com.cx.plugin.utils.CxParam.PENDING_SAST_SCAN_ID;
+import static com.cx.plugin.utils.CxParam.PENDING_TASK_ID;
 import static com.cx.plugin.utils.CxPluginUtils.printBuildFailure;
 import static com.cx.plugin.utils.CxPluginUtils.printConfiguration;
 
@@ -31,16 +49,25 @@ public class CheckmarxTask implements TaskType {
     public TaskResult execute(@NotNull final TaskContext taskContext) throws TaskException {
         CxLoggerAdapter log;
         CxShragaClient shraga = null;
-        boolean sastCreated = false;
-        boolean osaCreated = false;
+        CxScanAdmission.Permit admission = null;
+        ScanPipeline sast = null;
+        ExecutorService executor = null;
+        List<Future<ScanPipeline>> pending = new ArrayList<Future<ScanPipeline>>();
+        String failFastFailure = null;
+        List<ScanPipeline> stopped = Collections.emptyList();
         BuildContext buildContext = taskContext.getBuildContext();
         final TaskResultBuilder taskResultBuilder = TaskResultBuilder.newBuilder(taskContext);
+        final String logRoute = buildContext.getBuildResultKey();
         log = new CxLoggerAdapter(taskContext.getBuildLogger());
+        final CxPhaseTimer timer = new CxPhaseTimer();
+        final CxScanCanceller canceller = new CxScanCanceller(log, buildContext.getBuildKey().getKey());
 
         try {
             //resolve configuration
+            long phaseStart = timer.start();
             CxConfigHelper configHelper = new CxConfigHelper(log);
             CxScanConfig config = configHelper.resolveConfigurationMap(taskContext.getConfigurationMap(), taskContext.getWorkingDirectory());
+            timer.stop(CxPhaseTimer.Phase.CONFIGURATION, phaseStart);
 
             //print configuration
             printConfiguration(config, configHelper, log);
@@ -49,116 +76,313 @@ public class CheckmarxTask implements TaskType {
                 log.error("Both SAST and OSA are disabled. exiting");
                 //TODO run.setResult(Result.FAILURE);
             }
+            //reuse the results of a successful scan of the same revisions, or of the last one when none of the scanned sources changed
+            CxResultReuse reuse = null;
+            if ((configHelper.isReuseSameRevision() || configHelper.isSkipUnchangedSources()) && config.getSynchronous()) {
+                phaseStart = timer.start();
+                List<String> revisions = configHelper.isReuseSameRevision() ? resolveRevisions(buildContext) : Collections.<String>emptyList();
+                reuse = new CxResultReuse(config, taskContext.getWorkingDirectory(), buildContext.getBuildKey().getKey(),
+                        buildContext.getBuildResultKey(), revisions, log);
+                Map<String, String> reused = reuse.findSameRevision();
+                if (reused == null && configHelper.isSkipUnchangedSources()) {
+                    reused = reuse.findUnchangedSources();
+                }
+                timer.stop(CxPhaseTimer.Phase.RESULT_REUSE, phaseStart);
+                if (reused != null) {
+                    buildContext.getBuildResult().getCustomBuildData().putAll(reused);
+                    return taskResultBuilder.success().build();
+                }
+            }
+
             //create scans and retrieve results (in jenkins agent)
             ScanResults ret = new ScanResults(new SASTResults(), new OSAResults());
 
 
+            //builds do not wait for timeouts of a server other builds found unavailable
+            CxServerGuard guard = new CxServerGuard(config.getUrl(), log);
+            guard.logState();
+            if (guard.isRejecting()) {
+                return serverUnavailable(configHelper, log, taskResultBuilder);
+            }
+
             //initialize cx client
+            phaseStart = timer.start();
             try {
-                shraga = new CxShragaClient(config, log);
-                shraga.init();
+                shraga = createClient(guard, config, log);
+            } catch (InterruptedException ex) {
+                throw ex;
             } catch (Exception ex) {
+                if (CxServerGuard.isCircuitOpen(ex)) {
+                    return serverUnavailable(configHelper, log, taskResultBuilder);
+                }
                 throw new TaskException(ex.getMessage(), ex);
             }
+            timer.stop(CxPhaseTimer.Phase.CLIENT_INIT, phaseStart);
 
-            if (config.getSastEnabled()) {
-                try {
-                    shraga.createSASTScan();
-                    sastCreated = true;
-                } catch (IOException | CxClientException e) {
-                    ret.setSastCreateException(e);
-                    log.error(e.getMessage());
-                }
+            //wait for the server to run fewer Bamboo scans than the limit, then for a free scan slot on this agent (teams
+            //take turns); the server wait comes first so it does not hold up the agent's queue
+            phaseStart = timer.start();
+            CxScanAdmission scanAdmission = CxScanAdmission.getInstance();
+            Integer scanTimeout = config.getSastScanTimeoutInMinutes();
+            try {
+                scanAdmission.awaitServerCapacity(new CxScanLookup(shraga, config.getUrl()), CX_ORIGIN, configHelper.getMaxConcurrentScans(),
+                        scanTimeout == null ? 0 : TimeUnit.MINUTES.toMillis(scanTimeout), log);
+            } catch (TimeoutException e) {
+                log.error(e.getMessage());
+                return taskResultBuilder.failed().build();
             }
+            admission = scanAdmission.acquire(config.getTeamPath(), buildContext.getBuildResultKey(), configHelper.getMaxConcurrentScans(), log);
+            timer.stop(CxPhaseTimer.Phase.SCAN_SLOT, phaseStart);
 
+            List<ScanPipeline> pipelines = new ArrayList<ScanPipeline>();
+            if (config.getSastEnabled()) {
+                sast = new ScanPipeline(ScanPipeline.Engine.SAST, shraga, config, log, logRoute, timer);
+                sast.setPdfReport(configHelper.isPdfReportInBuild());
+                pipelines.add(sast);
+            }
             if (config.getOsaEnabled()) {
-                //---------------------------
-                //we do this in order to redirect the logs from the filesystem agent component to the build console
-                String appenderName = "cxAppender_" + buildContext.getBuildKey().getKey();
-                Logger.getRootLogger().addAppender(new CxAppender(taskContext.getBuildLogger(), appenderName));
-                //---------------------------
+                CxAppender.register(logRoute, taskContext.getBuildLogger());
+                pipelines.add(new ScanPipeline(ScanPipeline.Engine.OSA, shraga, config, log, logRoute, timer));
+            }
+            for (ScanPipeline pipeline : pipelines) {
+                pipeline.setServerGuard(guard);
+                canceller.register(pipeline);
+            }
 
-                try {
-                    shraga.createOSAScan();
-                    osaCreated = true;
-                } catch (CxClientException | IOException e) {
-                    ret.setOsaCreateException(e);
-                    log.error(e.getMessage());
-                } finally {
-                    Logger.getRootLogger().removeAppender(appenderName);
+            //a failed verdict cannot turn into a pass once the other engine's results arrive; only in parallel mode
+            //can the engine that finishes first be either of the two
+            boolean failFast = configHelper.isFailFast() && config.getSynchronous() && pipelines.size() > 1;
+            if (failFast && !configHelper.isParallelScans()) {
+                log.info("Fail fast applies to parallel scans only, the scans run one after the other");
+                failFast = false;
+            }
+            if (configHelper.isParallelScans() && pipelines.size() > 1) {
+                log.info("Running CxSAST and CxOSA scans in parallel");
+                executor = newScanExecutor(buildContext.getBuildKey().getKey(), pipelines.size());
+                CompletionService<ScanPipeline> completionService = new ExecutorCompletionService<ScanPipeline>(executor);
+                for (ScanPipeline pipeline : pipelines) {
+                    pending.add(completionService.submit(pipeline));
                 }
+                //merge every engine as soon as it is done, whichever finishes first
+                List<ScanPipeline> running = new ArrayList<ScanPipeline>(pipelines);
+                for (int i = 0; i < pipelines.size(); i++) {
+                    ScanPipeline done = takeCompleted(completionService);
+                    done.mergeInto(ret);
+                    running.remove(done);
+                    if (failFast && !running.isEmpty()) {
+                        failFastFailure = failFastVerdict(done, config, log);
+                        if (failFastFailure != null) {
+                            stopPipelines(pending, executor);
+                            canceller.cancel("the build fails on the " + done.getEngine() + " results alone");
+                            stopped = running;
+                            break;
+                        }
+                    }
+                }
+            } else {
+                for (ScanPipeline pipeline : pipelines) {
+                    pipeline.create();
+                }
+                if (config.getSynchronous()) {
+                    for (ScanPipeline pipeline : pipelines) {
+                        pipeline.await();
+                    }
+                }
+                for (ScanPipeline pipeline : pipelines) {
+                    pipeline.mergeInto(ret);
+                }
+            }
+            //the client reports an interrupted wait as a failed one, the interrupt status tells the build was stopped
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedException("The build was stopped");
+            }
+
+            if (!isAnyCreated(pipelines) && (CxServerGuard.isCircuitOpen(ret.getSastCreateException()) ||
+                    CxServerGuard.isCircuitOpen(ret.getOsaCreateException()))) {
+                return serverUnavailable(configHelper, log, taskResultBuilder);
             }
 
             //Asynchronous MODE
             if (!config.getSynchronous()) {
                 log.info("Running in Asynchronous mode. Not waiting for scan to finish");
-                String summaryStr = shraga.generateHTMLSummary();
-                ret.getSummary().put(HTML_REPORT, summaryStr);
 
                 if (ret.getSastCreateException() != null || ret.getOsaCreateException() != null) {
                     printBuildFailure(null, ret, log);
                     return taskResultBuilder.failed().build();
                 }
 
-                return taskResultBuilder.success().build();
-            }
-
-            if (sastCreated) {
-                try {
-                    SASTResults sastResults = shraga.waitForSASTResults();
-                    ret.setSastResults(sastResults);
-                } catch (CxClientException | IOException e) {
-                    ret.setSastWaitException(e);
-                    log.error(e.getMessage());
+                //the Bamboo server collects the results once the scans finish
+                if (!config.getHideResults()) {
+                    Map<String, String> customBuildData = buildContext.getBuildResult().getCustomBuildData();
+                    customBuildData.put(PENDING_TASK_ID, String.valueOf(taskContext.getId()));
+                    for (ScanPipeline pipeline : pipelines) {
+                        customBuildData.put(pipeline.getEngine() == ScanPipeline.Engine.SAST ? PENDING_SAST_SCAN_ID : PENDING_OSA_SCAN_ID, pipeline.getScanId());
+                    }
+                    log.info("Scan results will be added to the build results when the scan is done");
                 }
-            }
 
-            if (osaCreated) {
-                try {
-                    OSAResults osaResults = shraga.waitForOSAResults();
-                    ret.setOsaResults(osaResults);
-                } catch (CxClientException | IOException e) {
-                    ret.setOsaWaitException(e);
-                    log.error(e.getMessage());
-                }
+                return taskResultBuilder.success().build();
             }
 
+            //assert if expected exception is thrown  OR when vulnerabilities under threshold
+            phaseStart = timer.start();
+            //after fail fast the client's threshold check would count the cancelled engine as having no findings
+            String thresholdFailure;
+            if (failFastFailure != null) {
+                thresholdFailure = failFastFailure;
+            } else {
+                ThresholdResult thresholdResult = shraga.getThresholdResult();
+                thresholdFailure = thresholdResult.isFail() ? thresholdResult.getFailDescription() : null;
+            }
             if(!config.getHideResults()){
-                String summaryStr = shraga.generateHTMLSummary();
-                ret.getSummary().put(HTML_REPORT, summaryStr);
+                //only the compact summary is stored with the build, the panels render it on demand
+                CxScanSummary summary = CxScanSummary.fromResults(ret, config, thresholdFailure);
+                for (ScanPipeline pipeline : stopped) {
+                    if (pipeline.getEngine() == ScanPipeline.Engine.SAST) {
+                        summary.markSastCancelled();
+                    } else {
+                        summary.markOsaCancelled();
+                    }
+                }
+                summary.toCustomData(ret.getSummary());
                 buildContext.getBuildResult().getCustomBuildData().putAll(ret.getSummary());
+                if (configHelper.isPdfReportInBackground() && sast != null && sast.isCreated() && !stopped.contains(sast) &&
+                        ret.getSastWaitException() == null) {
+                    //the verdict does not depend on the report, the Bamboo server generates it after the build
+                    Map<String, String> customBuildData = buildContext.getBuildResult().getCustomBuildData();
+                    customBuildData.put(PDF_REPORT_TASK_ID, String.valueOf(taskContext.getId()));
+                    customBuildData.put(PDF_REPORT_SCAN_ID, sast.getScanId());
+                    customBuildData.put(PDF_REPORT_STATE, PDF_REPORT_PENDING);
+                    log.info("The CxSAST PDF report will be generated after the build and linked from the build results");
+                }
             }
-            //assert if expected exception is thrown  OR when vulnerabilities under threshold
-            ThresholdResult thresholdResult = shraga.getThresholdResult();
-            if (thresholdResult.isFail() || ret.getSastWaitException() != null || ret.getSastCreateException() != null ||
+            timer.stop(CxPhaseTimer.Phase.SUMMARY, phaseStart);
+            if (thresholdFailure != null || ret.getSastWaitException() != null || ret.getSastCreateException() != null ||
                     ret.getOsaCreateException() != null || ret.getOsaWaitException() != null) {
-                printBuildFailure(thresholdResult.getFailDescription(), ret, log);
+                printBuildFailure(thresholdFailure, ret, log);
                 return taskResultBuilder.failed().build();
             }
+            if (reuse != null) {
+                reuse.recordSuccess(ret.getSummary());
+            }
             return taskResultBuilder.success().build();
         } catch (InterruptedException e) {
             log.error("Interrupted exception: " + e.getMessage(), e);
-
-            if (shraga != null && sastCreated) {
-                log.error("Canceling scan on the Checkmarx server...");
-                cancelScan(shraga);
-            }
+            stopPipelines(pending, executor);
+            canceller.cancel("the build was stopped");
             throw new TaskException(e.getMessage());
 
         } catch (Exception e) {
             log.error("Unexpected exception: " + e.getMessage(), e);
+            stopPipelines(pending, executor);
+            canceller.cancel("the Checkmarx task failed");
             throw new TaskException(e.getMessage());
         } finally {
+            stopPipelines(pending, executor);
+            CxAppender.unregister(logRoute);
             if (shraga != null) {
                 shraga.close();
             }
+            if (admission != null) {
+                admission.release();
+            }
+            timer.report(log, buildContext.getBuildResult().getCustomBuildData());
+            log.close();
+        }
+    }
+
+    private List<String> resolveRevisions(BuildContext buildContext) {
+        List<String> revisions = new ArrayList<String>();
+        for (BuildRepositoryChanges changes : buildContext.getBuildChanges().getRepositoryChanges()) {
+            if (changes.getVcsRevisionKey() != null) {
+                revisions.add(changes.getRepositoryId() + "@" + changes.getVcsRevisionKey());
+            }
+        }
+        return revisions;
+    }
+
+    private CxShragaClient createClient(CxServerGuard guard, final CxScanConfig config, final Logger log) throws Exception {
+        //logging in and resolving the project can be repeated safely
+        return guard.callWithRetries("Checkmarx login", new Callable<CxShragaClient>() {
+            @Override
+            public CxShragaClient call() throws Exception {
+                CxShragaClient client = new CxShragaClient(config, log);
+                try {
+                    client.init();
+                } catch (Exception e) {
+                    client.close();
+                    throw e;
+                }
+                return client;
+            }
+        });
+    }
+
+    private TaskResult serverUnavailable(CxConfigHelper configHelper, CxLoggerAdapter log, TaskResultBuilder taskResultBuilder) {
+        if (configHelper.isSkipWhenServerUnavailable()) {
+            log.warn("The Checkmarx server is unavailable, the Checkmarx scan of this build is skipped");
+            return taskResultBuilder.success().build();
+        }
+        log.error("The Checkmarx server is unavailable, failing without waiting for it");
+        return taskResultBuilder.failed().build();
+    }
+
+    private boolean isAnyCreated(List<ScanPipeline> pipelines) {
+        for (ScanPipeline pipeline : pipelines) {
+            if (pipeline.isCreated()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the threshold failure of a finished engine's results, or null when they do not fail the build on their own
+     */
+    private String failFastVerdict(ScanPipeline done, CxScanConfig config, CxLoggerAdapter log) {
+        if (!done.isCreated() || done.isRunning()) {
+            return null;
+        }
+        //only the finished engine's own results, the client's threshold check would look at both engines
+        String failure = CxThresholds.check(config, done.getSastResults(), done.getOsaResults());
+        if (failure != null) {
+            log.warn("Fail fast: the " + done.getEngine() + " results fail the build (" + failure + "), not waiting for the other scan");
         }
+        return failure;
     }
 
-    private void cancelScan(CxShragaClient shraga) {
+    private ScanPipeline takeCompleted(CompletionService<ScanPipeline> completionService) throws InterruptedException {
         try {
-            shraga.cancelSASTScan();
-        } catch (Exception ignored) {
+            return completionService.take().get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            throw new IllegalStateException("Scan pipeline failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private ExecutorService newScanExecutor(final String buildKey, int engines) {
+        return Executors.newFixedThreadPool(engines, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NotNull Runnable r) {
+                Thread thread = new Thread(r, "cx-scan-" + buildKey + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    //cancel the whole task as a unit: no engine keeps running after the build thread gave up on it
+    private void stopPipelines(List<Future<ScanPipeline>> pending, ExecutorService executor) {
+        for (Future<ScanPipeline> future : pending) {
+            future.cancel(true);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
         }
     }
-}
\ No newline at end of file
+}
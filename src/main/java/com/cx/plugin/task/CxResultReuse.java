@@ -0,0 +1,180 @@
+package com.cx.plugin.task;
+
+import com.cx.plugin.source.CxSourceFilter;
+import com.cx.plugin.source.CxSourceManifest;
+import com.cx.plugin.utils.CxLoggerAdapter;
+import com.cx.plugin.utils.CxScanResultStore;
+import com.cx.restclient.configuration.CxScanConfig;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.cx.plugin.utils.CxParam.CX_CACHE_DIR;
+import static com.cx.plugin.utils.CxParam.REUSED_FROM_BUILD;
+import static com.cx.plugin.utils.CxPluginUtils.resolveScanFingerprint;
+import static com.cx.plugin.utils.CxPluginUtils.sha256Hex;
+
+/**
+ * Decides whether a build can reuse the results of a previous successful scan instead of submitting a new one,
+ * and records the results of successful scans for the builds that follow.
+ * <p>
+ * Two lookups are made: by the VCS revisions the build checked out, which also matches builds of other plans and
+ * branches scanning the same revisions into the same project, and by a manifest of the source files of the plan's
+ * last successful scan.
+ * The store lives next to the build working directories of the agent, so it survives cleaning the working directory.
+ */
+public class CxResultReuse {
+
+    private static final String MANIFEST_DIGEST = "cx.reuse.manifestDigest";
+    private static final String BUILD_RESULT_KEY = "cx.reuse.buildResultKey";
+    private static final String SUMMARY_PREFIX = "summary.";
+
+    private static final AtomicLong revisionHits = new AtomicLong();
+    private static final AtomicLong revisionMisses = new AtomicLong();
+
+    private final CxScanConfig config;
+    private final String buildKey;
+    private final String buildResultKey;
+    private final CxLoggerAdapter log;
+    private final CxScanResultStore store;
+    private final List<String> revisions;
+    private CxSourceManifest manifest;
+
+    /**
+     * @param revisions repository id and revision of every repository the build checked out, may be empty
+     */
+    public CxResultReuse(CxScanConfig config, File workDir, String buildKey, String buildResultKey, List<String> revisions, CxLoggerAdapter log) {
+        this.config = config;
+        this.buildKey = buildKey;
+        this.buildResultKey = buildResultKey;
+        this.log = log;
+        this.store = new CxScanResultStore(new File(workDir.getAbsoluteFile().getParentFile(), CX_CACHE_DIR));
+        this.revisions = new ArrayList<String>(revisions);
+        Collections.sort(this.revisions);
+    }
+
+    /**
+     * Looks up a successful scan of the same revisions into the same project with the same scan settings, made by any
+     * plan on this agent.
+     *
+     * @return the summary of that scan, otherwise null
+     */
+    public Map<String, String> findSameRevision() {
+        if (revisions.isEmpty() || config.getOsaEnabled() || config.getForceScan()) {
+            return null;
+        }
+        Map<String, String> previous = store.load(revisionEntryKey());
+        if (previous == null) {
+            long misses = revisionMisses.incrementAndGet();
+            log.info("Revision result cache: miss for " + revisions + " (" + revisionHits.get() + " hits, " + misses + " misses on this agent)");
+            return null;
+        }
+        long hits = revisionHits.incrementAndGet();
+        log.info("Revision result cache: hit for " + revisions + " (" + hits + " hits, " + revisionMisses.get() + " misses on this agent)");
+        log.info("The same revisions were scanned with the same settings by " + previous.get(BUILD_RESULT_KEY) +
+                ". Skipping the scan, reusing its results");
+        return extractSummary(previous);
+    }
+
+    /**
+     * Hashes the sources the scan would include and compares them with the manifest of the plan's last successful scan.
+     *
+     * @return the summary of that scan when nothing changed, otherwise null
+     */
+    public Map<String, String> findUnchangedSources() {
+        if (config.getOsaEnabled()) {
+            log.info("Source manifest check skipped: CxOSA results also depend on resolved dependencies");
+            return null;
+        }
+        if (config.getForceScan()) {
+            log.info("Source manifest check skipped: full scan is forced");
+            return null;
+        }
+
+        try {
+            CxSourceFilter filter = new CxSourceFilter(config.getSastFolderExclusions(), config.getSastFilterPattern());
+            log.info("Compiled filter patterns: " + filter.describe());
+            manifest = CxSourceManifest.compute(new File(config.getSourceDir()), filter, resolveScanFingerprint(config), indexFile());
+        } catch (Exception e) {
+            log.warn("Failed to compute source manifest, scanning as usual: " + e.getMessage());
+            return null;
+        }
+        log.info("Source manifest: " + manifest.getFileCount() + " files, " + manifest.getTotalBytes() + " bytes");
+        log.info("Source manifest: " + manifest.getPrunedDirectories() + " excluded directories skipped, " +
+                manifest.getExcludedFiles() + " files (" + manifest.getExcludedBytes() + " bytes) excluded by pattern");
+        log.info("Source manifest: walked and hashed in " + manifest.getWalkMillis() + " ms (" + manifest.getRehashed() +
+                " changed files, " + manifest.getHashedBytes() + " bytes read), digest in " + manifest.getDigestMillis() + " ms");
+
+        Map<String, String> previous = store.load(planEntryKey());
+        if (previous == null) {
+            log.info("No successful scan recorded for this plan yet");
+            return null;
+        }
+        if (!manifest.getDigest().equals(previous.get(MANIFEST_DIGEST))) {
+            log.info("Sources or scan settings changed since the last successful scan (" + previous.get(BUILD_RESULT_KEY) + ")");
+            return null;
+        }
+        log.info("Sources and scan settings did not change since the last successful scan (" + previous.get(BUILD_RESULT_KEY) +
+                "). Skipping packaging and upload, reusing its results");
+        return extractSummary(previous);
+    }
+
+    /**
+     * Records the summary of a successful synchronous scan against the manifest computed for this build.
+     */
+    public void recordSuccess(Map<String, String> summary) {
+        Map<String, String> entry = new HashMap<String, String>();
+        entry.put(BUILD_RESULT_KEY, buildResultKey);
+        for (Map.Entry<String, String> e : summary.entrySet()) {
+            entry.put(SUMMARY_PREFIX + e.getKey(), e.getValue());
+        }
+        if (!revisions.isEmpty() && !config.getOsaEnabled()) {
+            try {
+                store.save(revisionEntryKey(), entry);
+            } catch (Exception e) {
+                log.warn("Failed to record scan results for revision: " + e.getMessage());
+            }
+        }
+        if (manifest == null) {
+            return;
+        }
+        entry.put(MANIFEST_DIGEST, manifest.getDigest());
+        try {
+            store.save(planEntryKey(), entry);
+            manifest.saveIndex(indexFile());
+        } catch (Exception e) {
+            log.warn("Failed to record source manifest: " + e.getMessage());
+        }
+    }
+
+    private Map<String, String> extractSummary(Map<String, String> entry) {
+        Map<String, String> summary = new HashMap<String, String>();
+        for (Map.Entry<String, String> e : entry.entrySet()) {
+            if (e.getKey().startsWith(SUMMARY_PREFIX)) {
+                summary.put(e.getKey().substring(SUMMARY_PREFIX.length()), e.getValue());
+            }
+        }
+        summary.put(REUSED_FROM_BUILD, entry.get(BUILD_RESULT_KEY));
+        return summary;
+    }
+
+    private String planEntryKey() {
+        return "plan:" + buildKey;
+    }
+
+    /**
+     * The revisions, the project and team, and every setting the results depend on.
+     */
+    String revisionEntryKey() {
+        return "revision:" + revisions + "|" + sha256Hex(resolveScanFingerprint(config) + "|" + config.getIncremental());
+    }
+
+    private File indexFile() {
+        return new File(store.getDir(), store.fileOf(planEntryKey()).getName().replace(".properties", ".files.gz"));
+    }
+}
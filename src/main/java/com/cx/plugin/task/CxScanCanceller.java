@@ -0,0 +1,133 @@
+package com.cx.plugin.task;
+
+import com.cx.plugin.utils.CxLoggerAdapter;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Cancels everything a Checkmarx task started on the server when its build is stopped.
+ * <p>
+ * Every engine of the task is cancelled at the same time, each on its own thread, and the build thread waits at most
+ * {@link #DEADLINE_SECONDS} seconds for them; a server that does not answer in time does not hold the agent. A scan
+ * that is only created after the build was stopped is cancelled as soon as its id is known.
+ */
+public class CxScanCanceller {
+
+    private static final long DEADLINE_SECONDS = 15;
+
+    private final CxLoggerAdapter log;
+    private final String buildKey;
+    private final List<ScanPipeline> pipelines = new CopyOnWriteArrayList<ScanPipeline>();
+    private volatile boolean cancelled = false;
+
+    public CxScanCanceller(CxLoggerAdapter log, String buildKey) {
+        this.log = log;
+        this.buildKey = buildKey;
+    }
+
+    public void register(ScanPipeline pipeline) {
+        pipeline.setCanceller(this);
+        pipelines.add(pipeline);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Cancels the scans of every registered engine, and returns once they are cancelled or the deadline passed.
+     * Calling it again does nothing. The interrupt status of the calling thread is kept.
+     */
+    public void cancel(String reason) {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+
+        List<ScanPipeline> registered = new ArrayList<ScanPipeline>(pipelines);
+        List<Callable<String>> cancellations = new ArrayList<Callable<String>>();
+        for (final ScanPipeline pipeline : registered) {
+            cancellations.add(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return pipeline.cancel();
+                }
+            });
+        }
+        if (cancellations.isEmpty()) {
+            return;
+        }
+        log.info("Cancelling the Checkmarx scans of this build: " + reason);
+
+        //the build thread is usually interrupted, which would end the wait right away
+        boolean interrupted = Thread.interrupted();
+        long start = System.currentTimeMillis();
+        ExecutorService executor = newCancelExecutor(cancellations.size());
+        try {
+            List<Future<String>> results = executor.invokeAll(cancellations, DEADLINE_SECONDS, TimeUnit.SECONDS);
+            for (int i = 0; i < results.size(); i++) {
+                report(registered.get(i), results.get(i));
+            }
+        } catch (InterruptedException e) {
+            interrupted = true;
+            log.warn("Stopped waiting for the Checkmarx scans to be cancelled");
+        } finally {
+            executor.shutdownNow();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        log.info("Checkmarx cancellation finished in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Cancels a scan that was created after {@link #cancel} ran, on the thread that created it.
+     */
+    void cancelLate(ScanPipeline pipeline) {
+        try {
+            String cancelled = pipeline.cancel();
+            if (cancelled != null) {
+                log.info(cancelled + " (created after the build was stopped)");
+            }
+        } catch (Exception e) {
+            log.warn("Failed to cancel " + pipeline.getEngine() + " scan " + pipeline.getScanId() + ": " + e.getMessage());
+        }
+    }
+
+    private void report(ScanPipeline pipeline, Future<String> result) {
+        String engine = pipeline.getEngine() == ScanPipeline.Engine.SAST ? "CxSAST" : "CxOSA";
+        if (result.isCancelled()) {
+            log.warn("The Checkmarx server did not confirm the cancellation of the " + engine + " scan " +
+                    pipeline.getScanId() + " within " + DEADLINE_SECONDS + " seconds");
+            return;
+        }
+        try {
+            String cancelled = result.get();
+            if (cancelled != null) {
+                log.info(cancelled);
+            }
+        } catch (ExecutionException e) {
+            log.warn("Failed to cancel the " + engine + " scan " + pipeline.getScanId() + ": " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            //invokeAll returned, every future is done
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private ExecutorService newCancelExecutor(int engines) {
+        return Executors.newFixedThreadPool(engines, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(@NotNull Runnable r) {
+                Thread thread = new Thread(r, "cx-cancel-" + buildKey + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+}
@@ -0,0 +1,291 @@
+package com.cx.plugin.task;
+
+import com.cx.plugin.client.CxReportDownloader;
+import com.cx.plugin.client.CxScanWaitCoordinator;
+import com.cx.plugin.client.CxServerGuard;
+import com.cx.plugin.dto.ScanResults;
+import com.cx.plugin.utils.CxAppender;
+import com.cx.plugin.utils.CxLoggerAdapter;
+import com.cx.plugin.utils.CxPhaseTimer;
+import com.cx.restclient.CxShragaClient;
+import com.cx.restclient.configuration.CxScanConfig;
+import com.cx.restclient.exception.CxClientException;
+import com.cx.restclient.osa.dto.OSAResults;
+import com.cx.restclient.sast.dto.SASTResults;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * ScanPipeline holds the create-and-wait flow of a single scan engine (CxSAST or CxOSA).
+ * <p>
+ * CheckmarxTask either drives the two pipelines one step at a time on the build thread, or submits them
+ * to an executor so both engines run side by side. Results and exceptions are merged into {@link ScanResults}
+ * by the build thread once the pipeline finished.
+ */
+public class ScanPipeline implements Callable<ScanPipeline> {
+
+    public enum Engine {SAST, OSA}
+
+    private final Engine engine;
+    private final CxShragaClient shraga;
+    private final CxScanConfig config;
+    private final CxLoggerAdapter log;
+    private final String logRoute;
+    private final boolean waitForResults;
+    private final String historyKey;
+    private final int timeoutMinutes;
+    private final CxPhaseTimer timer;
+    private boolean pdfReport = false;
+    private volatile CxReportDownloader reportDownloader;
+    private CxScanCanceller canceller;
+    private CxServerGuard guard;
+    private final AtomicBoolean cancelRequested = new AtomicBoolean();
+
+    private volatile boolean created = false;
+    private String scanId;
+    private long createdNanos;
+    private Exception createException = null;
+    private Exception waitException = null;
+    private SASTResults sastResults;
+    private OSAResults osaResults;
+
+    public ScanPipeline(Engine engine, CxShragaClient shraga, CxScanConfig config, CxLoggerAdapter log, String logRoute, CxPhaseTimer timer) {
+        this.engine = engine;
+        this.shraga = shraga;
+        this.config = config;
+        this.log = log;
+        this.logRoute = logRoute;
+        this.waitForResults = config.getSynchronous();
+        this.historyKey = config.getUrl() + "\n" + config.getProjectName() + "\n" + engine +
+                (engine == Engine.SAST ? "\n" + (Boolean.TRUE.equals(config.getIncremental()) ? "incremental" : "full") : "");
+        Integer timeout = engine == Engine.SAST ? config.getSastScanTimeoutInMinutes() : null;
+        this.timeoutMinutes = timeout == null ? 0 : timeout;
+        this.timer = timer;
+    }
+
+    @Override
+    public ScanPipeline call() throws InterruptedException {
+        create();
+        if (waitForResults && !cancelRequested.get()) {
+            await();
+        }
+        return this;
+    }
+
+    public void create() {
+        long phaseStart = timer.start();
+        try {
+            if (guard != null) {
+                guard.checkAvailable();
+            }
+            if (engine == Engine.SAST) {
+                scanId = String.valueOf(shraga.createSASTScan());
+            } else {
+                scanId = createOSAScan();
+            }
+            createdNanos = System.nanoTime();
+            created = true;
+            if (guard != null) {
+                guard.recordSuccess();
+            }
+            if (canceller != null && canceller.isCancelled()) {
+                //the build was stopped while the scan was being created
+                canceller.cancelLate(this);
+            }
+        } catch (IOException | CxClientException e) {
+            if (guard != null) {
+                guard.recordFailure(e);
+            }
+            createException = e;
+            log.error(e.getMessage());
+        } finally {
+            timer.stop(engine == Engine.SAST ? CxPhaseTimer.Phase.SAST_CREATE : CxPhaseTimer.Phase.OSA_CREATE, phaseStart);
+        }
+    }
+
+    private String createOSAScan() throws IOException, CxClientException {
+        //---------------------------
+        //we do this in order to redirect the logs from the filesystem agent component to the build console
+        CxAppender.bindCurrentThread(logRoute);
+        //---------------------------
+        try {
+            return shraga.createOSAScan();
+        } finally {
+            CxAppender.unbindCurrentThread();
+        }
+    }
+
+    public void await() throws InterruptedException {
+        if (!created || cancelRequested.get()) {
+            return;
+        }
+        CxScanWaitCoordinator coordinator = CxScanWaitCoordinator.getInstance();
+        CxScanWaitCoordinator.Ticket ticket = coordinator.register(historyKey, createdNanos, timeoutMinutes);
+        boolean succeeded = false;
+        CxPhaseTimer.Phase phase = CxPhaseTimer.Phase.POLL_DELAY;
+        long phaseStart = timer.start();
+        try {
+            long delayMillis = coordinator.awaitFirstPoll(ticket, log);
+            timer.stop(phase, phaseStart);
+            phase = engine == Engine.SAST ? CxPhaseTimer.Phase.SAST_WAIT : CxPhaseTimer.Phase.OSA_WAIT;
+            phaseStart = timer.start();
+            if (engine == Engine.SAST) {
+                shortenTimeout(delayMillis);
+                sastResults = shraga.waitForSASTResults();
+            } else {
+                osaResults = shraga.waitForOSAResults();
+            }
+            succeeded = true;
+            if (guard != null) {
+                guard.recordSuccess();
+            }
+        } catch (IOException | CxClientException e) {
+            if (guard != null) {
+                guard.recordFailure(e);
+            }
+            waitException = e;
+            log.error(e.getMessage());
+        } finally {
+            coordinator.complete(ticket, succeeded);
+            timer.stop(phase, phaseStart);
+        }
+        //after the scan is complete, so the report is neither counted as scan time nor in the scan history
+        if (succeeded && engine == Engine.SAST && pdfReport && !cancelRequested.get()) {
+            phaseStart = timer.start();
+            try {
+                downloadPdfReport();
+            } finally {
+                timer.stop(CxPhaseTimer.Phase.PDF_REPORT, phaseStart);
+            }
+        }
+    }
+
+    //the client's timeout starts with its wait, the delay before the first poll is part of the scan's time
+    private void shortenTimeout(long delayMillis) {
+        if (timeoutMinutes <= 0 || delayMillis <= 0) {
+            return;
+        }
+        long remainingMillis = TimeUnit.MINUTES.toMillis(timeoutMinutes) - delayMillis;
+        config.setSastScanTimeoutInMinutes((int) Math.max(1, TimeUnit.MILLISECONDS.toMinutes(remainingMillis + TimeUnit.MINUTES.toMillis(1) - 1)));
+    }
+
+    private void downloadPdfReport() throws InterruptedException {
+        String fileName = "CxSASTReport_" + new SimpleDateFormat("dd_MM_yyyy-HH_mm_ss").format(new Date()) + ".pdf";
+        File reportsDir = config.getReportsDir();
+        try {
+            if (!reportsDir.isDirectory() && !reportsDir.mkdirs()) {
+                throw new IOException("Failed to create directory: " + reportsDir);
+            }
+            log.info("Generating PDF report");
+            reportDownloader = new CxReportDownloader(shraga, config, log);
+            reportDownloader.download(Long.parseLong(scanId), "PDF", new File(reportsDir, fileName));
+            log.info("PDF report location: " + reportsDir + File.separator + fileName);
+        } catch (IOException e) {
+            //the scan results do not depend on the report
+            log.error("Failed to generate PDF report: " + e.getMessage());
+        }
+    }
+
+    public void mergeInto(ScanResults ret) {
+        if (engine == Engine.SAST) {
+            if (sastResults != null) {
+                ret.setSastResults(sastResults);
+            }
+            ret.setSastCreateException(createException);
+            ret.setSastWaitException(waitException);
+        } else {
+            if (osaResults != null) {
+                ret.setOsaResults(osaResults);
+            }
+            ret.setOsaCreateException(createException);
+            ret.setOsaWaitException(waitException);
+        }
+    }
+
+    /**
+     * Downloads the CxSAST PDF report into the reports directory once the scan finished.
+     */
+    public void setPdfReport(boolean pdfReport) {
+        this.pdfReport = pdfReport;
+    }
+
+    /**
+     * Stops this engine: the scan is cancelled on the server when it is still running, and a PDF report download in
+     * progress is aborted. Only the first call does anything.
+     *
+     * @return what was cancelled, or null when there was nothing to cancel
+     */
+    String cancel() throws Exception {
+        if (!created || !cancelRequested.compareAndSet(false, true)) {
+            return null;
+        }
+        CxReportDownloader downloader = reportDownloader;
+        if (downloader != null) {
+            downloader.abort();
+        }
+        if (!isRunning()) {
+            return downloader == null ? null : "Download of PDF report " + downloader.getReportId() + " of CxSAST scan " + scanId + " stopped";
+        }
+        if (engine == Engine.SAST) {
+            shraga.cancelSASTScan();
+            return "CxSAST scan " + scanId + " cancelled";
+        }
+        return "Stopped waiting for CxOSA scan " + scanId + " (OSA scans cannot be cancelled on the server)";
+    }
+
+    /**
+     * The scan is cancelled right after it is created when the build was stopped in the meantime.
+     */
+    public void setCanceller(CxScanCanceller canceller) {
+        this.canceller = canceller;
+    }
+
+    /**
+     * Routes the calls creating and waiting for the scan through the circuit breaker of the server.
+     */
+    public void setServerGuard(CxServerGuard guard) {
+        this.guard = guard;
+    }
+
+    /**
+     * @return true when the scan was created and its results were not retrieved (yet)
+     */
+    public boolean isRunning() {
+        return created && (engine == Engine.SAST ? sastResults == null : osaResults == null);
+    }
+
+    public Engine getEngine() {
+        return engine;
+    }
+
+    /**
+     * @return the results of this pipeline's CxSAST scan, null for CxOSA or before the scan finished
+     */
+    public SASTResults getSastResults() {
+        return sastResults;
+    }
+
+    /**
+     * @return the results of this pipeline's CxOSA scan, null for CxSAST or before the scan finished
+     */
+    public OSAResults getOsaResults() {
+        return osaResults;
+    }
+
+    public boolean isCreated() {
+        return created;
+    }
+
+    /**
+     * @return the id of the scan on the server, or null when it was not created
+     */
+    public String getScanId() {
+        return scanId;
+    }
+}
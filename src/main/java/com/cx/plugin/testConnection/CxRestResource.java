@@ -1,13 +1,11 @@
 package com.cx.plugin.testConnection;
 
 
+import com.cx.plugin.client.CxServerMetadataCache;
 import com.cx.plugin.dto.TestConnectionResponse;
-import com.cx.restclient.CxShragaClient;
 import com.cx.restclient.dto.Team;
 import com.cx.restclient.sast.dto.Preset;
 import org.codehaus.plexus.util.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.POST;
@@ -31,9 +29,7 @@ public class CxRestResource {
 
     private List<Preset> presets;
     private List<Team> teams;
-    private CxShragaClient shraga;
     private String result = "";
-    private Logger logger = LoggerFactory.getLogger(CxRestResource.class);
 
 
     @POST
@@ -64,9 +60,10 @@ public class CxRestResource {
         String username = StringUtils.defaultString(credentials.get("username"));
         String pas = StringUtils.defaultString(credentials.get("pas"));
         try {
-            if (loginToServer(url, username, decrypt(pas))) {
-                presets = shraga.getPresetList();
-                teams = shraga.getTeamList();
+            CxServerMetadataCache.ServerMetadata metadata = loadServerMetadata(url, username, decrypt(pas));
+            if (metadata != null) {
+                presets = metadata.getPresets();
+                teams = metadata.getTeams();
                 if (presets == null || teams == null) {
                     throw new Exception("invalid preset teamPath");
                 }
@@ -90,15 +87,13 @@ public class CxRestResource {
         return Response.status(statusCode).entity(tcResponse).build();
     }
 
-    private boolean loginToServer(URL url, String username, String password) {
+    //always logs in, the test must reach the server; the fresh lists also refresh the task editor's cache
+    private CxServerMetadataCache.ServerMetadata loadServerMetadata(URL url, String username, String password) {
         try {
-            shraga = new CxShragaClient(url.toString().trim(), username, password, CX_ORIGIN, false, logger);
-            shraga.login();
-
-            return true;
+            return CxServerMetadataCache.getInstance().reload(url.toString().trim(), username, password);
         } catch (Exception CxClientException) {
             result = CxClientException.getMessage();
-            return false;
+            return null;
         }
     }
 }
\ No newline at end of file
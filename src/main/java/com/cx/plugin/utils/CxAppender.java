@@ -1,48 +1,111 @@
 package com.cx.plugin.utils;
 
 import com.atlassian.bamboo.build.logger.BuildLogger;
+import org.apache.log4j.Appender;
 import org.apache.log4j.AppenderSkeleton;
-import org.apache.log4j.spi.Filter;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
 import org.apache.log4j.spi.LoggingEvent;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Created by: dorg.
  * Date: 04/03/2018.
+ * <p>
+ * Redirects the logs of the OSA filesystem agent component (org.whitesource) to the console of the build that
+ * triggered them.
+ * <p>
+ * A single instance is attached to the org.whitesource logger when the plugin starts and detached when it is disabled
+ * ({@link CxPluginLifecycle}), so events of other loggers never reach it. Builds register their build logger under a
+ * route key and mark their scanning thread with it through the log4j MDC; every event is dispatched to the build
+ * logger of the route found in the event's MDC, so concurrent builds never see each other's events.
  */
 public class CxAppender extends AppenderSkeleton {
 
-    private BuildLogger buildProgressLogger;
-    private Filter filter = new Filter() {
-        @Override
-        public int decide(LoggingEvent loggingEvent) {
-            if (loggingEvent.getLocationInformation().getClassName().startsWith("org.whitesource")) {
-                return 0;
-            } else {
-                return -1;
+    public static final String ROUTE_MDC_KEY = "cxBuildRoute";
+    private static final String APPENDER_NAME = "cxRoutingAppender";
+    private static final String ROUTED_LOGGER_NAME = "org.whitesource";
+
+    private static final CxAppender INSTANCE = new CxAppender();
+
+    private final Map<String, BuildLogger> routes = new ConcurrentHashMap<String, BuildLogger>();
+
+    private CxAppender() {
+        this.name = APPENDER_NAME;
+    }
+
+    /**
+     * Attaches the appender to the org.whitesource logger; called when the plugin starts.
+     */
+    public static void attach() {
+        synchronized (INSTANCE) {
+            //left behind by an earlier version of the plugin, which attached it to the root logger
+            removeStale(Logger.getRootLogger());
+            Logger routed = Logger.getLogger(ROUTED_LOGGER_NAME);
+            removeStale(routed);
+            if (routed.getAppender(APPENDER_NAME) == null) {
+                routed.addAppender(INSTANCE);
             }
         }
-    };
+    }
+
+    /**
+     * Detaches the appender and drops every route; called when the plugin is disabled.
+     */
+    public static void detach() {
+        synchronized (INSTANCE) {
+            INSTANCE.routes.clear();
+            Logger.getLogger(ROUTED_LOGGER_NAME).removeAppender(INSTANCE);
+        }
+    }
+
+    private static void removeStale(Logger logger) {
+        Appender attached = logger.getAppender(APPENDER_NAME);
+        if (attached != null && attached != INSTANCE) {
+            logger.removeAppender(attached);
+        }
+    }
 
+    /**
+     * Routes the events of the build's scanning threads to its build logger.
+     */
+    public static void register(String route, BuildLogger buildLogger) {
+        INSTANCE.routes.put(route, buildLogger);
+    }
+
+    public static void unregister(String route) {
+        INSTANCE.routes.remove(route);
+    }
 
-    public CxAppender(BuildLogger buildProgressLogger, String name) {
-        this.name = name;
-        this.buildProgressLogger = buildProgressLogger;
-        this.headFilter = filter;
+    /**
+     * Routes the events logged by the current thread (and threads it starts) to the build registered under route.
+     */
+    public static void bindCurrentThread(String route) {
+        MDC.put(ROUTE_MDC_KEY, route);
+    }
+
+    public static void unbindCurrentThread() {
+        MDC.remove(ROUTE_MDC_KEY);
     }
 
     @Override
     protected void append(LoggingEvent loggingEvent) {
+        Object route = loggingEvent.getMDC(ROUTE_MDC_KEY);
+        if (route == null) {
+            return;
+        }
+        BuildLogger buildProgressLogger = routes.get(route.toString());
+        if (buildProgressLogger == null) {
+            return;
+        }
         buildProgressLogger.addBuildLogEntry(loggingEvent.getMessage().toString());
         if (loggingEvent.getThrowableInformation() != null && loggingEvent.getThrowableInformation().getThrowable() != null) {
             buildProgressLogger.addErrorLogEntry(loggingEvent.getMessage().toString(), loggingEvent.getThrowableInformation().getThrowable());
         }
     }
 
-    @Override
-    public Filter getFilter() {
-        return filter;
-    }
-
     @Override
     public void close() {
 
@@ -53,6 +116,3 @@ public class CxAppender extends AppenderSkeleton {
         return false;
     }
 }
-
-
-
@@ -0,0 +1,199 @@
+package com.cx.plugin.utils;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Moves build log writes off the scanning threads.
+ * <p>
+ * Log lines go into a bounded lock free ring buffer (many producers, one consumer) and a single drain thread
+ * hands them to the {@link BuildLogger} in batches, so the scanning threads never wait on the build logger's lock.
+ * When the buffer is full a producer waits a short while for the drain thread to make room; lines that still do
+ * not fit are dropped and counted, and the count is written to the build log on {@link #close()}.
+ * After close, lines are written to the build logger directly.
+ */
+public class CxBuildLogPipeline {
+
+    private static final int CAPACITY = 8192;
+    private static final int MASK = CAPACITY - 1;
+    private static final long FULL_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long FULL_WAIT_ERROR_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long CLOSE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final BuildLogger buildLogger;
+    private final AtomicReferenceArray<Entry> slots = new AtomicReferenceArray<Entry>(CAPACITY);
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head = 0;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean started = new AtomicBoolean();
+    //producers between their check of the closed flag and the publication of their line
+    private final AtomicInteger offering = new AtomicInteger();
+    private volatile boolean closed = false;
+    private volatile Thread drainThread;
+
+    public CxBuildLogPipeline(BuildLogger buildLogger) {
+        this.buildLogger = buildLogger;
+    }
+
+    public void info(String message) {
+        offer(new Entry(message, null, false));
+    }
+
+    public void error(String message, Throwable throwable) {
+        offer(new Entry(message, throwable, true));
+    }
+
+    private void offer(Entry entry) {
+        //announce the offer before checking the flag, so close() either sees the offer or the offer sees the flag
+        offering.incrementAndGet();
+        try {
+            if (closed) {
+                write(entry);
+                return;
+            }
+            enqueue(entry);
+        } finally {
+            offering.decrementAndGet();
+        }
+    }
+
+    private void enqueue(Entry entry) {
+        ensureStarted();
+        long deadline = System.nanoTime() + (entry.error ? FULL_WAIT_ERROR_NANOS : FULL_WAIT_NANOS);
+        while (true) {
+            long t = tail.get();
+            if (t - head >= CAPACITY) {
+                //full: back off and give the drain thread a chance, then give up on this line
+                LockSupport.unpark(drainThread);
+                if (System.nanoTime() > deadline) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+                continue;
+            }
+            if (tail.compareAndSet(t, t + 1)) {
+                slots.set((int) (t & MASK), entry);
+                return;
+            }
+        }
+    }
+
+    private void ensureStarted() {
+        if (started.compareAndSet(false, true)) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    drainLoop();
+                }
+            }, "cx-build-log-drain");
+            thread.setDaemon(true);
+            drainThread = thread;
+            thread.start();
+        }
+    }
+
+    private void drainLoop() {
+        while (!closed || head < tail.get()) {
+            if (drain() == 0) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Writes every line published so far, in order.
+     *
+     * @return the number of lines written
+     */
+    private int drain() {
+        int count = 0;
+        long h = head;
+        while (h < tail.get()) {
+            int index = (int) (h & MASK);
+            Entry entry = slots.get(index);
+            if (entry == null) {
+                //claimed by a producer that did not publish yet
+                Thread.yield();
+                continue;
+            }
+            slots.set(index, null);
+            write(entry);
+            head = ++h;
+            count++;
+        }
+        return count;
+    }
+
+    private void write(Entry entry) {
+        if (!entry.error) {
+            buildLogger.addBuildLogEntry(entry.message);
+        } else if (entry.throwable != null) {
+            buildLogger.addErrorLogEntry(entry.message, entry.throwable);
+        } else {
+            buildLogger.addErrorLogEntry(entry.message);
+        }
+    }
+
+    /**
+     * Writes all pending lines and stops the drain thread. Safe to call more than once.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        //producers that saw the flag unset publish into the ring, wait for them so their lines are drained below
+        while (offering.get() > 0) {
+            Thread.yield();
+        }
+        Thread thread = drainThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            //a cancelled build closes with its interrupt flag set, flush anyway and restore the flag afterwards
+            boolean interrupted = Thread.interrupted();
+            try {
+                thread.join(TimeUnit.NANOSECONDS.toMillis(CLOSE_TIMEOUT_NANOS));
+            } catch (InterruptedException e) {
+                interrupted = true;
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (thread.isAlive()) {
+                buildLogger.addErrorLogEntry("Timed out flushing the Checkmarx build log");
+            } else {
+                //lines published while the drain thread was stopping
+                drain();
+            }
+        }
+        long droppedLines = dropped.get();
+        if (droppedLines > 0) {
+            buildLogger.addBuildLogEntry(droppedLines + " Checkmarx log lines were dropped because the build log could not keep up");
+        }
+    }
+
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    private static class Entry {
+        final String message;
+        final Throwable throwable;
+        final boolean error;
+
+        Entry(String message, Throwable throwable, boolean error) {
+            this.message = message;
+            this.throwable = throwable;
+            this.error = error;
+        }
+    }
+}
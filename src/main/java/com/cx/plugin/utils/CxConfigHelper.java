@@ -1,14 +1,12 @@
 package com.cx.plugin.utils;
 
-import com.atlassian.bamboo.configuration.AdministrationConfiguration;
 import com.atlassian.bamboo.configuration.ConfigurationMap;
 import com.atlassian.bamboo.task.TaskException;
-import com.atlassian.spring.container.ContainerManager;
 import com.cx.restclient.configuration.CxScanConfig;
 import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
 
 import java.io.File;
-import java.lang.reflect.Method;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
@@ -24,22 +22,28 @@ import static com.cx.plugin.utils.CxPluginUtils.resolveInt;
  */
 public class CxConfigHelper {
     private CxScanConfig scanConfig;
-    private AdministrationConfiguration adminConfig;
+    private CxGlobalSettings globalSettings;
     private boolean isIntervals;
     private String intervalBegins;
     private String intervalEnds;
-    private CxLoggerAdapter log;
-
-    public CxConfigHelper(CxLoggerAdapter log) {
+    private boolean isParallelScans;
+    private boolean isFailFast;
+    private boolean isSkipUnchangedSources;
+    private boolean isReuseSameRevision;
+    private boolean isPdfReportInBackground;
+    private boolean isPdfReportInBuild;
+    private int maxConcurrentScans;
+    private boolean isSkipWhenServerUnavailable;
+    private Logger log;
+
+    public CxConfigHelper(Logger log) {
         this.log = log;
     }
 
     public CxScanConfig resolveConfigurationMap(ConfigurationMap configMap, File workDir) throws TaskException {
         log.info("Resolving Cx configuration");
-        Object a = ContainerManager.getComponent("administrationConfigurationAccessor");
         try {
-            Method getAdminConfig = a.getClass().getDeclaredMethod("getAdministrationConfiguration");
-            adminConfig = (AdministrationConfiguration) getAdminConfig.invoke(a);
+            globalSettings = CxGlobalSettings.get();
         } catch (Exception e) {
             throw new TaskException("Failed to resolve global configuration", e);
         }
@@ -54,9 +58,9 @@ public class CxConfigHelper {
             scanConfig.setUsername(configMap.get(USER_NAME));
             scanConfig.setPassword(decrypt(configMap.get(PASSWORD)));
         } else {
-            scanConfig.setUrl(getAdminConfig(GLOBAL_SERVER_URL));
-            scanConfig.setUsername(getAdminConfig(GLOBAL_USER_NAME));
-            scanConfig.setPassword(decrypt(getAdminConfig(GLOBAL_PASSWORD)));
+            scanConfig.setUrl(globalSettings.getServerUrl());
+            scanConfig.setUsername(globalSettings.getUsername());
+            scanConfig.setPassword(decrypt(globalSettings.getPassword()));
         }
 
         scanConfig.setProjectName(configMap.get(PROJECT_NAME).trim());
@@ -82,9 +86,9 @@ public class CxConfigHelper {
             scanConfig.setSastScanTimeoutInMinutes(resolveInt(configMap.get(SCAN_TIMEOUT_IN_MINUTES), log));
 
         } else {
-            scanConfig.setSastFolderExclusions(getAdminConfig(GLOBAL_FOLDER_EXCLUSION));
-            scanConfig.setSastFilterPattern(getAdminConfig(GLOBAL_FILTER_PATTERN));
-            scanConfig.setSastScanTimeoutInMinutes(resolveInt(getAdminConfig(GLOBAL_SCAN_TIMEOUT_IN_MINUTES), log));
+            scanConfig.setSastFolderExclusions(globalSettings.getFolderExclusions());
+            scanConfig.setSastFilterPattern(globalSettings.getFilterPatterns());
+            scanConfig.setSastScanTimeoutInMinutes(globalSettings.getScanTimeoutInMinutes());
         }
 
         scanConfig.setScanComment(configMap.get(COMMENT));
@@ -98,11 +102,20 @@ public class CxConfigHelper {
                 scanConfig = resolveIntervalFullScan(scanConfig);
             }
         }
-        scanConfig.setGeneratePDFReport(resolveBool(configMap, GENERATE_PDF_REPORT));
+        //the plugin streams the report into a file itself (or the Bamboo server does so after the build),
+        //the client would hold the whole report in memory
+        boolean generatePdfReport = resolveBool(configMap, GENERATE_PDF_REPORT);
+        isPdfReportInBackground = generatePdfReport && resolveBool(configMap, PDF_REPORT_IN_BACKGROUND);
+        isPdfReportInBuild = generatePdfReport && !isPdfReportInBackground;
+        scanConfig.setGeneratePDFReport(false);
+        isSkipUnchangedSources = resolveBool(configMap, SKIP_UNCHANGED_SOURCES);
+        isReuseSameRevision = resolveBool(configMap, REUSE_SAME_REVISION);
         scanConfig.setOsaEnabled(resolveBool(configMap, OSA_ENABLED));
         scanConfig.setOsaArchiveIncludePatterns(configMap.get(OSA_ARCHIVE_INCLUDE_PATTERNS));
         scanConfig.setOsaFilterPattern(configMap.get(OSA_FILTER_PATTERNS));
         scanConfig.setOsaRunInstall(resolveBool(configMap, OSA_INSTALL_BEFORE_SCAN));
+        isParallelScans = resolveBool(configMap, OSA_PARALLEL_SCAN);
+        isFailFast = resolveBool(configMap, FAIL_FAST);
 
         if (CUSTOM_CONFIGURATION_CONTROL.equals(configMap.get(SCAN_CONTROL_SECTION))) {
             scanConfig.setSynchronous(resolveBool(configMap, IS_SYNCHRONOUS));
@@ -116,20 +129,22 @@ public class CxConfigHelper {
             scanConfig.setOsaMediumThreshold(resolveInt(configMap.get(OSA_MEDIUM_THRESHOLD), log));
             scanConfig.setOsaLowThreshold(resolveInt(configMap.get(OSA_LOW_THRESHOLD), log));
         } else {
-            scanConfig.setSynchronous(resolveGlobalBool(GLOBAL_IS_SYNCHRONOUS));
-            scanConfig.setEnablePolicyViolations(resolveGlobalBool(GLOBAL_POLICY_VIOLATION_ENABLED));
-            scanConfig.setSastThresholdsEnabled(resolveGlobalBool(GLOBAL_THRESHOLDS_ENABLED));
-            scanConfig.setSastHighThreshold(resolveInt(getAdminConfig(GLOBAL_HIGH_THRESHOLD), log));
-            scanConfig.setSastMediumThreshold(resolveInt(getAdminConfig(GLOBAL_MEDIUM_THRESHOLD), log));
-            scanConfig.setSastLowThreshold(resolveInt(getAdminConfig(GLOBAL_LOW_THRESHOLD), log));
-            scanConfig.setOsaThresholdsEnabled(resolveGlobalBool(GLOBAL_OSA_THRESHOLDS_ENABLED));
-            scanConfig.setOsaHighThreshold(resolveInt(getAdminConfig(GLOBAL_OSA_HIGH_THRESHOLD), log));
-            scanConfig.setOsaMediumThreshold(resolveInt(getAdminConfig(GLOBAL_OSA_MEDIUM_THRESHOLD), log));
-            scanConfig.setOsaLowThreshold(resolveInt(getAdminConfig(GLOBAL_OSA_LOW_THRESHOLD), log));
+            scanConfig.setSynchronous(globalSettings.isSynchronous());
+            scanConfig.setEnablePolicyViolations(globalSettings.isPolicyViolationsEnabled());
+            scanConfig.setSastThresholdsEnabled(globalSettings.isThresholdsEnabled());
+            scanConfig.setSastHighThreshold(globalSettings.getHighThreshold());
+            scanConfig.setSastMediumThreshold(globalSettings.getMediumThreshold());
+            scanConfig.setSastLowThreshold(globalSettings.getLowThreshold());
+            scanConfig.setOsaThresholdsEnabled(globalSettings.isOsaThresholdsEnabled());
+            scanConfig.setOsaHighThreshold(globalSettings.getOsaHighThreshold());
+            scanConfig.setOsaMediumThreshold(globalSettings.getOsaMediumThreshold());
+            scanConfig.setOsaLowThreshold(globalSettings.getOsaLowThreshold());
         }
 
-        scanConfig.setDenyProject(resolveGlobalBool(GLOBAL_DENY_PROJECT));
-        scanConfig.setHideResults(resolveGlobalBool(GLOBAL_HIDE_RESULTS));
+        scanConfig.setDenyProject(globalSettings.isDenyProject());
+        scanConfig.setHideResults(globalSettings.isHideResults());
+        maxConcurrentScans = globalSettings.getMaxConcurrentScans();
+        isSkipWhenServerUnavailable = globalSettings.isSkipWhenServerUnavailable();
 
         return scanConfig;
     }
@@ -138,10 +153,6 @@ public class CxConfigHelper {
         return OPTION_TRUE.equals(configMap.get(value));
     }
 
-    private boolean resolveGlobalBool(String value) {
-        return OPTION_TRUE.equals(getAdminConfig(value));
-    }
-
 
     private CxScanConfig resolveIntervalFullScan(CxScanConfig scanConfig) {
 
@@ -187,10 +198,6 @@ public class CxConfigHelper {
     }
 
 
-    private String getAdminConfig(String key) {
-        return StringUtils.defaultString(adminConfig.getSystemProperty(key));
-    }
-
     public String getPluginVersion() {
         String version = "";
         try {
@@ -214,6 +221,70 @@ public class CxConfigHelper {
         isIntervals = intervals;
     }
 
+    public boolean isParallelScans() {
+        return isParallelScans;
+    }
+
+    public void setParallelScans(boolean parallelScans) {
+        isParallelScans = parallelScans;
+    }
+
+    public boolean isFailFast() {
+        return isFailFast;
+    }
+
+    public void setFailFast(boolean failFast) {
+        isFailFast = failFast;
+    }
+
+    public boolean isSkipUnchangedSources() {
+        return isSkipUnchangedSources;
+    }
+
+    public void setSkipUnchangedSources(boolean skipUnchangedSources) {
+        isSkipUnchangedSources = skipUnchangedSources;
+    }
+
+    public boolean isReuseSameRevision() {
+        return isReuseSameRevision;
+    }
+
+    public void setReuseSameRevision(boolean reuseSameRevision) {
+        isReuseSameRevision = reuseSameRevision;
+    }
+
+    public boolean isPdfReportInBackground() {
+        return isPdfReportInBackground;
+    }
+
+    public void setPdfReportInBackground(boolean pdfReportInBackground) {
+        isPdfReportInBackground = pdfReportInBackground;
+    }
+
+    public boolean isPdfReportInBuild() {
+        return isPdfReportInBuild;
+    }
+
+    public void setPdfReportInBuild(boolean pdfReportInBuild) {
+        isPdfReportInBuild = pdfReportInBuild;
+    }
+
+    public int getMaxConcurrentScans() {
+        return maxConcurrentScans;
+    }
+
+    public void setMaxConcurrentScans(int maxConcurrentScans) {
+        this.maxConcurrentScans = maxConcurrentScans;
+    }
+
+    public boolean isSkipWhenServerUnavailable() {
+        return isSkipWhenServerUnavailable;
+    }
+
+    public void setSkipWhenServerUnavailable(boolean skipWhenServerUnavailable) {
+        isSkipWhenServerUnavailable = skipWhenServerUnavailable;
+    }
+
     public String getIntervalBegins() {
         return intervalBegins;
     }
@@ -0,0 +1,102 @@
+package com.cx.plugin.utils;
+
+import com.atlassian.bamboo.security.EncryptionException;
+import com.atlassian.bamboo.security.EncryptionService;
+import com.atlassian.bamboo.security.EncryptionServiceImpl;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encrypts and decrypts the stored Checkmarx passwords with one shared encryption service.
+ * <p>
+ * A value is decrypted at most once: when decryption fails the value is taken to be a plain text password.
+ * Decrypted values are kept in a small LRU cache (ciphertext to plaintext), bounded so that a stream of
+ * distinct passwords cannot grow it, and cleared whenever the global configuration is saved.
+ */
+public class CxCredentialService {
+
+    private static final int MAX_CACHED_CREDENTIALS = 128;
+
+    private static final CxCredentialService INSTANCE = new CxCredentialService();
+
+    private final EncryptionService encryptionService = new EncryptionServiceImpl();
+    private final Map<String, String> decrypted = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MAX_CACHED_CREDENTIALS;
+        }
+    };
+
+    private CxCredentialService() {
+    }
+
+    public static CxCredentialService getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return the plain text of an encrypted value, or the value itself when it is not encrypted
+     */
+    public String decrypt(String value) {
+        if (value == null) {
+            return null;
+        }
+        String plain = tryDecrypt(value);
+        return plain != null ? plain : value;
+    }
+
+    /**
+     * @return the encrypted value, or the value itself when it is already encrypted
+     */
+    public String encrypt(String value) {
+        if (value == null || tryDecrypt(value) != null) {
+            return value;
+        }
+        try {
+            String encrypted = encryptionService.encrypt(value);
+            remember(encrypted, value);
+            return encrypted;
+        } catch (EncryptionException e) {
+            return "";
+        }
+    }
+
+    public boolean isEncrypted(String value) {
+        return value != null && tryDecrypt(value) != null;
+    }
+
+    public void invalidate() {
+        synchronized (decrypted) {
+            decrypted.clear();
+        }
+    }
+
+    /**
+     * @return the plain text, or null when the value is not encrypted
+     */
+    private String tryDecrypt(String value) {
+        synchronized (decrypted) {
+            String plain = decrypted.get(value);
+            if (plain != null) {
+                return plain;
+            }
+        }
+        String plain;
+        try {
+            plain = encryptionService.decrypt(value);
+        } catch (EncryptionException e) {
+            return null;
+        }
+        if (plain != null) {
+            remember(value, plain);
+        }
+        return plain;
+    }
+
+    private void remember(String encrypted, String plain) {
+        synchronized (decrypted) {
+            decrypted.put(encrypted, plain);
+        }
+    }
+}
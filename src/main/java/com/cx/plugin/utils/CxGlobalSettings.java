@@ -0,0 +1,213 @@
+package com.cx.plugin.utils;
+
+import com.atlassian.bamboo.configuration.AdministrationConfiguration;
+import com.atlassian.spring.container.ContainerManager;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+
+import static com.cx.plugin.utils.CxParam.*;
+import static com.cx.plugin.utils.CxPluginUtils.resolveInt;
+
+/**
+ * An immutable snapshot of the Checkmarx global configuration (Bamboo administration settings).
+ * <p>
+ * The current snapshot is published through a volatile field. CxGlobalConfig replaces it when the settings are saved
+ * and stamps the settings with a new version; a JVM that did not see the save (a remote agent) compares that version
+ * on its next build and reloads only when it changed.
+ */
+public final class CxGlobalSettings {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CxGlobalSettings.class);
+
+    private static volatile CxGlobalSettings current;
+    private static volatile Object accessor;
+    private static volatile Method getAdministrationConfiguration;
+
+    private final String version;
+    private final String serverUrl;
+    private final String username;
+    private final String password;
+    private final String folderExclusions;
+    private final String filterPatterns;
+    private final Integer scanTimeoutInMinutes;
+    private final boolean synchronous;
+    private final boolean hideResults;
+    private final boolean policyViolationsEnabled;
+    private final boolean thresholdsEnabled;
+    private final Integer highThreshold;
+    private final Integer mediumThreshold;
+    private final Integer lowThreshold;
+    private final boolean osaThresholdsEnabled;
+    private final Integer osaHighThreshold;
+    private final Integer osaMediumThreshold;
+    private final Integer osaLowThreshold;
+    private final boolean denyProject;
+    private final int maxConcurrentScans;
+    private final boolean skipWhenServerUnavailable;
+    private final String baseUrl;
+
+    private CxGlobalSettings(AdministrationConfiguration adminConfig) {
+        version = get(adminConfig, GLOBAL_CONFIG_VERSION);
+        serverUrl = get(adminConfig, GLOBAL_SERVER_URL);
+        username = get(adminConfig, GLOBAL_USER_NAME);
+        password = get(adminConfig, GLOBAL_PASSWORD);
+        folderExclusions = get(adminConfig, GLOBAL_FOLDER_EXCLUSION);
+        filterPatterns = get(adminConfig, GLOBAL_FILTER_PATTERN);
+        scanTimeoutInMinutes = resolveInt(get(adminConfig, GLOBAL_SCAN_TIMEOUT_IN_MINUTES), LOG);
+        synchronous = OPTION_TRUE.equals(get(adminConfig, GLOBAL_IS_SYNCHRONOUS));
+        hideResults = OPTION_TRUE.equals(get(adminConfig, GLOBAL_HIDE_RESULTS));
+        policyViolationsEnabled = OPTION_TRUE.equals(get(adminConfig, GLOBAL_POLICY_VIOLATION_ENABLED));
+        thresholdsEnabled = OPTION_TRUE.equals(get(adminConfig, GLOBAL_THRESHOLDS_ENABLED));
+        highThreshold = resolveInt(get(adminConfig, GLOBAL_HIGH_THRESHOLD), LOG);
+        mediumThreshold = resolveInt(get(adminConfig, GLOBAL_MEDIUM_THRESHOLD), LOG);
+        lowThreshold = resolveInt(get(adminConfig, GLOBAL_LOW_THRESHOLD), LOG);
+        osaThresholdsEnabled = OPTION_TRUE.equals(get(adminConfig, GLOBAL_OSA_THRESHOLDS_ENABLED));
+        osaHighThreshold = resolveInt(get(adminConfig, GLOBAL_OSA_HIGH_THRESHOLD), LOG);
+        osaMediumThreshold = resolveInt(get(adminConfig, GLOBAL_OSA_MEDIUM_THRESHOLD), LOG);
+        osaLowThreshold = resolveInt(get(adminConfig, GLOBAL_OSA_LOW_THRESHOLD), LOG);
+        denyProject = OPTION_TRUE.equals(get(adminConfig, GLOBAL_DENY_PROJECT));
+        Integer maxScans = resolveInt(get(adminConfig, GLOBAL_MAX_CONCURRENT_SCANS), LOG);
+        maxConcurrentScans = maxScans == null ? 0 : maxScans;
+        skipWhenServerUnavailable = OPTION_TRUE.equals(get(adminConfig, GLOBAL_SKIP_WHEN_UNAVAILABLE));
+        baseUrl = StringUtils.removeEnd(StringUtils.defaultString(adminConfig.getBaseUrl()), "/");
+    }
+
+    private static String get(AdministrationConfiguration adminConfig, String key) {
+        return StringUtils.defaultString(adminConfig.getSystemProperty(key));
+    }
+
+    /**
+     * @return the current snapshot, reloaded only when the stored settings version differs from it
+     */
+    public static CxGlobalSettings get() throws Exception {
+        AdministrationConfiguration adminConfig = resolveAdministrationConfiguration();
+        CxGlobalSettings snapshot = current;
+        if (snapshot == null || !snapshot.version.equals(get(adminConfig, GLOBAL_CONFIG_VERSION))) {
+            snapshot = new CxGlobalSettings(adminConfig);
+            current = snapshot;
+        }
+        return snapshot;
+    }
+
+    /**
+     * Replaces the snapshot with the settings that were just saved.
+     */
+    public static void publish(AdministrationConfiguration adminConfig) {
+        current = new CxGlobalSettings(adminConfig);
+    }
+
+    private static AdministrationConfiguration resolveAdministrationConfiguration() throws Exception {
+        Method method = getAdministrationConfiguration;
+        Object target = accessor;
+        if (method == null || target == null) {
+            target = ContainerManager.getComponent("administrationConfigurationAccessor");
+            method = target.getClass().getDeclaredMethod("getAdministrationConfiguration");
+            accessor = target;
+            getAdministrationConfiguration = method;
+        }
+        return (AdministrationConfiguration) method.invoke(target);
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    /**
+     * @return the password as stored, encrypted
+     */
+    public String getPassword() {
+        return password;
+    }
+
+    public String getFolderExclusions() {
+        return folderExclusions;
+    }
+
+    public String getFilterPatterns() {
+        return filterPatterns;
+    }
+
+    public Integer getScanTimeoutInMinutes() {
+        return scanTimeoutInMinutes;
+    }
+
+    public boolean isSynchronous() {
+        return synchronous;
+    }
+
+    public boolean isHideResults() {
+        return hideResults;
+    }
+
+    public boolean isPolicyViolationsEnabled() {
+        return policyViolationsEnabled;
+    }
+
+    public boolean isThresholdsEnabled() {
+        return thresholdsEnabled;
+    }
+
+    public Integer getHighThreshold() {
+        return highThreshold;
+    }
+
+    public Integer getMediumThreshold() {
+        return mediumThreshold;
+    }
+
+    public Integer getLowThreshold() {
+        return lowThreshold;
+    }
+
+    public boolean isOsaThresholdsEnabled() {
+        return osaThresholdsEnabled;
+    }
+
+    public Integer getOsaHighThreshold() {
+        return osaHighThreshold;
+    }
+
+    public Integer getOsaMediumThreshold() {
+        return osaMediumThreshold;
+    }
+
+    public Integer getOsaLowThreshold() {
+        return osaLowThreshold;
+    }
+
+    public boolean isDenyProject() {
+        return denyProject;
+    }
+
+    /**
+     * @return the maximum number of builds scanning at once on an agent, 0 for no limit
+     */
+    public int getMaxConcurrentScans() {
+        return maxConcurrentScans;
+    }
+
+    /**
+     * @return true when builds pass with a warning instead of failing while the Checkmarx server is unavailable
+     */
+    public boolean isSkipWhenServerUnavailable() {
+        return skipWhenServerUnavailable;
+    }
+
+    /**
+     * @return the Bamboo base URL without a trailing slash
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+}
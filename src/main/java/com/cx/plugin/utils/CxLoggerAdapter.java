@@ -16,11 +16,18 @@ public class CxLoggerAdapter extends MarkerIgnoringBase {
 
     private final Logger log = LoggerFactory.getLogger("Checkmarx Build Logger");
 
-    private BuildLogger buildLogger;
+    private final CxBuildLogPipeline pipeline;
 
     public CxLoggerAdapter(BuildLogger log) {
         this.name = "Build Logger";
-        this.buildLogger = log;
+        this.pipeline = new CxBuildLogPipeline(log);
+    }
+
+    /**
+     * Flushes every pending build log line. Call when the task completes or is cancelled.
+     */
+    public void close() {
+        pipeline.close();
     }
 
     public boolean isTraceEnabled() {
@@ -48,30 +55,30 @@ public class CxLoggerAdapter extends MarkerIgnoringBase {
     }
 
     public void debug(String s) {
-        buildLogger.addBuildLogEntry(s);
+        pipeline.info(s);
         log.debug(s);
     }
 
     public void debug(String s, Object o) {
         FormattingTuple ft = MessageFormatter.format(s, o);
-        buildLogger.addBuildLogEntry(ft.getMessage());
+        pipeline.info(ft.getMessage());
         log.debug(s, o);
     }
 
     public void debug(String s, Object o, Object o1) {
         FormattingTuple ft = MessageFormatter.format(s, o, o1);
-        buildLogger.addBuildLogEntry(ft.getMessage());
+        pipeline.info(ft.getMessage());
         log.debug(s, o, o1);
     }
 
     public void debug(String s, Object... objects) {
         FormattingTuple ft = MessageFormatter.format(s, objects);
-        buildLogger.addBuildLogEntry(ft.getMessage());
+        pipeline.info(ft.getMessage());
         log.debug(s, objects);
     }
 
     public void debug(String s, Throwable throwable) {
-        buildLogger.addBuildLogEntry(s);
+        pipeline.info(s);
         log.debug(s, throwable);
     }
 
@@ -83,30 +90,30 @@ public class CxLoggerAdapter extends MarkerIgnoringBase {
     }
 
     public void info(String s) {
-        buildLogger.addBuildLogEntry(s);
+        pipeline.info(s);
         log.info(s);
     }
 
     public void info(String s, Object o) {
         FormattingTuple ft = MessageFormatter.format(s, o);
-        buildLogger.addBuildLogEntry(ft.getMessage());
+        pipeline.info(ft.getMessage());
         log.info(s, o);
     }
 
     public void info(String s, Object o, Object o1) {
         FormattingTuple ft = MessageFormatter.format(s, o, o1);
-        buildLogger.addBuildLogEntry(ft.getMessage());
+        pipeline.info(ft.getMessage());
         log.info(s, o, o1);
     }
 
     public void info(String s, Object... objects) {
         FormattingTuple ft = MessageFormatter.format(s, objects);
-        buildLogger.addBuildLogEntry(ft.getMessage());
+        pipeline.info(ft.getMessage());
         log.info(s, objects);
     }
 
     public void info(String s, Throwable throwable) {
-        buildLogger.addBuildLogEntry(s);
+        pipeline.info(s);
         log.info(s, throwable);
     }
 
@@ -116,30 +123,30 @@ public class CxLoggerAdapter extends MarkerIgnoringBase {
     }
 
     public void warn(String s) {
-        buildLogger.addBuildLogEntry(s);
+        pipeline.info(s);
         log.warn(s);
     }
 
     public void warn(String s, Object o) {
         FormattingTuple ft = MessageFormatter.format(s, o);
-        buildLogger.addBuildLogEntry(ft.getMessage());
+        pipeline.info(ft.getMessage());
         log.warn(s, o);
     }
 
     public void warn(String s, Object... objects) {
         FormattingTuple ft = MessageFormatter.format(s, objects);
-        buildLogger.addBuildLogEntry(ft.getMessage());
+        pipeline.info(ft.getMessage());
         log.warn(s, objects);
     }
 
     public void warn(String s, Object o, Object o1) {
         FormattingTuple ft = MessageFormatter.format(s, o, o1);
-        buildLogger.addBuildLogEntry(ft.getMessage());
+        pipeline.info(ft.getMessage());
         log.warn(s, o, o1);
     }
 
     public void warn(String s, Throwable throwable) {
-        buildLogger.addBuildLogEntry(s);
+        pipeline.info(s);
         log.warn(s, throwable);
     }
 
@@ -148,30 +155,30 @@ public class CxLoggerAdapter extends MarkerIgnoringBase {
     }
 
     public void error(String s) {
-        buildLogger.addErrorLogEntry(s);
+        pipeline.error(s, null);
         log.error(s);
     }
 
     public void error(String s, Object o) {
         FormattingTuple ft = MessageFormatter.format(s, o);
-        buildLogger.addErrorLogEntry(ft.getMessage(), ft.getThrowable());
+        pipeline.error(ft.getMessage(), ft.getThrowable());
         log.error(s, o);
     }
 
     public void error(String s, Object o, Object o1) {
         FormattingTuple ft = MessageFormatter.format(s, o, o1);
-        buildLogger.addErrorLogEntry(ft.getMessage(), ft.getThrowable());
+        pipeline.error(ft.getMessage(), ft.getThrowable());
         log.error(s, o, o1);
     }
 
     public void error(String s, Object... objects) {
         FormattingTuple ft = MessageFormatter.format(s, objects);
-        buildLogger.addErrorLogEntry(ft.getMessage(), ft.getThrowable());
+        pipeline.error(ft.getMessage(), ft.getThrowable());
         log.error(s, objects);
     }
 
     public void error(String s, Throwable throwable) {
-        buildLogger.addErrorLogEntry(s, throwable);
+        pipeline.error(s, throwable);
         log.error(s, throwable);
 
     }
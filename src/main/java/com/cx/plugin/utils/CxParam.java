@@ -10,6 +10,10 @@ import java.io.File;
 public class CxParam {
     public static final String CX_REPORT_LOCATION = File.separator + "Checkmarx" + File.separator + "Reports";
 
+    public static final String CX_CACHE_DIR = "_checkmarx";
+    public static final String CX_TREND_DIR = "checkmarx" + File.separator + "trends";
+    public static final String CX_PDF_REPORT_DIR = "checkmarx" + File.separator + "reports";
+
     public static final String CX_ORIGIN = "Bamboo";
     public static final String USER_NAME = "username";
     public static final String PASSWORD = "password";
@@ -33,6 +37,9 @@ public class CxParam {
     public static final String INTERVAL_BEGINS_LIST = "intervalBeginsList";
     public static final String INTERVAL_ENDS_LIST = "intervalEndsList";
     public static final String GENERATE_PDF_REPORT = "generatePDFReport";
+    public static final String SKIP_UNCHANGED_SOURCES = "skipUnchangedSources";
+    public static final String REUSE_SAME_REVISION = "reuseSameRevisionResults";
+    public static final String PDF_REPORT_IN_BACKGROUND = "pdfReportInBackground";
     public static final String IS_SYNCHRONOUS = "isSynchronous";
     public static final String THRESHOLDS_ENABLED = "thresholdsEnabled";
     public static final String HIGH_THRESHOLD = "highThreshold";
@@ -43,6 +50,8 @@ public class CxParam {
     public static final String OSA_FILTER_PATTERNS = "cxOsaFilterPatterns";
     public static final String OSA_ARCHIVE_INCLUDE_PATTERNS = "cxOsaArchiveIncludePatterns";
     public static final String OSA_INSTALL_BEFORE_SCAN = "cxOsaInstallBeforeScan";
+    public static final String OSA_PARALLEL_SCAN = "cxOsaParallelScan";
+    public static final String FAIL_FAST = "cxFailFast";
     public static final String OSA_THRESHOLDS_ENABLED = "osaThresholdsEnabled";
     public static final String OSA_HIGH_THRESHOLD = "osaHighThreshold";
     public static final String OSA_MEDIUM_THRESHOLD = "osaMediumThreshold";
@@ -64,6 +73,41 @@ public class CxParam {
     public final static String NO_TEAM_MESSAGE = "Unable to connect to server. Make sure URL and Credentials are valid to see teams list";
     public final static String ERROR_OCCURRED = "errorOccurred";
     public final static String HTML_REPORT = "htmlReport";
+    public final static String REUSED_FROM_BUILD = "cxReusedFromBuild";
+    public final static String PENDING_PREFIX = "cxPending.";
+    public final static String PENDING_TASK_ID = PENDING_PREFIX + "taskId";
+    public final static String PENDING_SAST_SCAN_ID = PENDING_PREFIX + "sastScanId";
+    public final static String PENDING_OSA_SCAN_ID = PENDING_PREFIX + "osaScanId";
+    public final static String PENDING_UNAVAILABLE = PENDING_PREFIX + "unavailable";
+
+    public final static String PDF_REPORT_PREFIX = "cxPdfReport.";
+    public final static String PDF_REPORT_TASK_ID = PDF_REPORT_PREFIX + "taskId";
+    public final static String PDF_REPORT_SCAN_ID = PDF_REPORT_PREFIX + "scanId";
+    public final static String PDF_REPORT_STATE = PDF_REPORT_PREFIX + "state";
+    public final static String PDF_REPORT_PENDING = "pending";
+    public final static String PDF_REPORT_READY = "ready";
+    public final static String PDF_REPORT_FAILED = "failed";
+    public final static String PDF_REPORT_SERVLET = "/plugins/servlet/checkmarx/report";
+    public final static String SUMMARY_PREFIX = "cxSummary.";
+    public final static String SUMMARY_SAST_ENABLED = SUMMARY_PREFIX + "sastEnabled";
+    public final static String SUMMARY_SAST_SCAN_ID = SUMMARY_PREFIX + "sastScanId";
+    public final static String SUMMARY_SAST_HIGH = SUMMARY_PREFIX + "sastHigh";
+    public final static String SUMMARY_SAST_MEDIUM = SUMMARY_PREFIX + "sastMedium";
+    public final static String SUMMARY_SAST_LOW = SUMMARY_PREFIX + "sastLow";
+    public final static String SUMMARY_SAST_SCAN_LINK = SUMMARY_PREFIX + "sastScanLink";
+    public final static String SUMMARY_SAST_PROJECT_LINK = SUMMARY_PREFIX + "sastProjectLink";
+    public final static String SUMMARY_OSA_ENABLED = SUMMARY_PREFIX + "osaEnabled";
+    public final static String SUMMARY_OSA_SCAN_ID = SUMMARY_PREFIX + "osaScanId";
+    public final static String SUMMARY_OSA_HIGH = SUMMARY_PREFIX + "osaHigh";
+    public final static String SUMMARY_OSA_MEDIUM = SUMMARY_PREFIX + "osaMedium";
+    public final static String SUMMARY_OSA_LOW = SUMMARY_PREFIX + "osaLow";
+    public final static String SUMMARY_OSA_PROJECT_LINK = SUMMARY_PREFIX + "osaProjectLink";
+    public final static String SUMMARY_SAST_CANCELLED = SUMMARY_PREFIX + "sastCancelled";
+    public final static String SUMMARY_OSA_CANCELLED = SUMMARY_PREFIX + "osaCancelled";
+    public final static String SUMMARY_OSA_POLICY_ENFORCED = SUMMARY_PREFIX + "osaPolicyEnforced";
+    public final static String SUMMARY_OSA_POLICY_VIOLATIONS = SUMMARY_PREFIX + "osaPolicyViolations";
+    public final static String SUMMARY_THRESHOLD_FAILED = SUMMARY_PREFIX + "thresholdFailed";
+    public final static String SUMMARY_THRESHOLD_DESCRIPTION = SUMMARY_PREFIX + "thresholdDescription";
 
     public final static String ERROR_OCCURRED_MESSAGE = "Configuration settings were not saved. Please review your settings and try again";
 
@@ -88,6 +132,9 @@ public class CxParam {
     public static final String GLOBAL_OSA_LOW_THRESHOLD = "globalOsaLowThreshold";
     public static final String GLOBAL_DENY_PROJECT = "globalDenyProject";
     public static final String GLOBAL_POLICY_VIOLATION_ENABLED = "globalEnablePolicyViolations";
+    public static final String GLOBAL_MAX_CONCURRENT_SCANS = "globalMaxConcurrentScans";
+    public static final String GLOBAL_SKIP_WHEN_UNAVAILABLE = "globalSkipWhenServerUnavailable";
+    public static final String GLOBAL_CONFIG_VERSION = "globalConfigVersion";
     public static final String DEFAULT_FILTER_PATTERNS = "!**/_cvs/**/*, !**/.svn/**/*,   !**/.hg/**/*,   !**/.git/**/*,  !**/.bzr/**/*, !**/bin/**/*," +
             "!**/obj/**/*,  !**/backup/**/*, !**/.idea/**/*, !**/*.DS_Store, !**/*.ipr,     !**/*.iws,   " +
             "!**/*.bak,     !**/*.tmp,       !**/*.aac,      !**/*.aif,      !**/*.iff,     !**/*.m3u,   !**/*.mid,   !**/*.mp3,  " +
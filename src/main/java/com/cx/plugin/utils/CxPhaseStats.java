@@ -0,0 +1,124 @@
+package com.cx.plugin.utils;
+
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Duration histogram of one phase, registered as an MBean under com.cx.plugin:type=TaskPhases.
+ */
+public class CxPhaseStats implements CxPhaseStatsMBean {
+
+    private static final long[] BUCKET_LIMITS_MILLIS = {100, 1000, 5000, 30000, 120000, 600000, 1800000, Long.MAX_VALUE};
+    private static final String[] BUCKET_LABELS = {"<100ms", "<1s", "<5s", "<30s", "<2m", "<10m", "<30m", ">=30m"};
+
+    private final String phase;
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong totalMillis = new AtomicLong();
+    private final AtomicLong maxMillis = new AtomicLong();
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_LIMITS_MILLIS.length);
+
+    CxPhaseStats(String phase) {
+        this.phase = phase;
+    }
+
+    void record(long millis) {
+        count.incrementAndGet();
+        totalMillis.addAndGet(millis);
+        long max;
+        while (millis > (max = maxMillis.get()) && !maxMillis.compareAndSet(max, millis)) {
+            //retry
+        }
+        for (int i = 0; i < BUCKET_LIMITS_MILLIS.length; i++) {
+            if (millis < BUCKET_LIMITS_MILLIS[i]) {
+                buckets.incrementAndGet(i);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Registers the MBean, replacing one left behind by a previous version of the plugin.
+     */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (Exception ignored) {
+            //statistics are best effort
+        }
+    }
+
+    void unregister() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = objectName();
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception ignored) {
+            //statistics are best effort
+        }
+    }
+
+    private ObjectName objectName() throws MalformedObjectNameException {
+        return new ObjectName("com.cx.plugin:type=TaskPhases,phase=" + ObjectName.quote(phase));
+    }
+
+    @Override
+    public String getPhase() {
+        return phase;
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public long getTotalMillis() {
+        return totalMillis.get();
+    }
+
+    @Override
+    public long getMeanMillis() {
+        long c = count.get();
+        return c == 0 ? 0 : totalMillis.get() / c;
+    }
+
+    @Override
+    public long getMaxMillis() {
+        return maxMillis.get();
+    }
+
+    @Override
+    public String[] getHistogramBuckets() {
+        return BUCKET_LABELS.clone();
+    }
+
+    @Override
+    public long[] getHistogramCounts() {
+        long[] ret = new long[buckets.length()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = buckets.get(i);
+        }
+        return ret;
+    }
+
+    @Override
+    public void reset() {
+        count.set(0);
+        totalMillis.set(0);
+        maxMillis.set(0);
+        for (int i = 0; i < buckets.length(); i++) {
+            buckets.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.cx.plugin.utils;
+
+/**
+ * JMX view of the durations of one Checkmarx task phase, aggregated across the builds of this JVM.
+ */
+public interface CxPhaseStatsMBean {
+
+    String getPhase();
+
+    long getCount();
+
+    long getTotalMillis();
+
+    long getMeanMillis();
+
+    long getMaxMillis();
+
+    String[] getHistogramBuckets();
+
+    long[] getHistogramCounts();
+
+    void reset();
+}
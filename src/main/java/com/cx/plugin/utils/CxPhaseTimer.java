@@ -0,0 +1,104 @@
+package com.cx.plugin.utils;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the phases of one Checkmarx task run with System.nanoTime().
+ * <p>
+ * The durations are written to the build log as a table, stored with the build as custom build data
+ * ({@link #TIMING_PREFIX} + phase key, in milliseconds) and added to the JVM wide {@link CxPhaseStats} MBeans.
+ * The two engines may run in parallel, so phases can be recorded from several threads.
+ */
+public class CxPhaseTimer {
+
+    public static final String TIMING_PREFIX = "cxTiming.";
+
+    public enum Phase {
+        CONFIGURATION("configuration", "Configuration resolution"),
+        RESULT_REUSE("resultReuse", "Result reuse check"),
+        CLIENT_INIT("clientInit", "Login and project resolution"),
+        SCAN_SLOT("scanSlot", "Waiting for a scan slot"),
+        SAST_CREATE("sastCreate", "CxSAST packaging and upload"),
+        OSA_CREATE("osaCreate", "CxOSA dependency resolution and upload"),
+        POLL_DELAY("pollDelay", "First status check held back"),
+        SAST_WAIT("sastWait", "CxSAST server queue and scan"),
+        OSA_WAIT("osaWait", "CxOSA scan"),
+        PDF_REPORT("pdfReport", "CxSAST PDF report generation and download"),
+        SUMMARY("summary", "Threshold evaluation and summary");
+
+        private final String key;
+        private final String label;
+
+        Phase(String key, String label) {
+            this.key = key;
+            this.label = label;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    private static final Map<Phase, CxPhaseStats> STATS = new EnumMap<Phase, CxPhaseStats>(Phase.class);
+
+    static {
+        for (Phase phase : Phase.values()) {
+            CxPhaseStats stats = new CxPhaseStats(phase.getKey());
+            stats.register();
+            STATS.put(phase, stats);
+        }
+    }
+
+    /**
+     * Unregisters the phase MBeans, so the platform MBean server does not keep the classes of a disabled plugin.
+     */
+    public static void unregisterStats() {
+        for (CxPhaseStats stats : STATS.values()) {
+            stats.unregister();
+        }
+    }
+
+    private final long startNanos = System.nanoTime();
+    private final Map<Phase, Long> durations = new EnumMap<Phase, Long>(Phase.class);
+
+    /**
+     * @return the System.nanoTime() to pass to {@link #stop(Phase, long)}
+     */
+    public long start() {
+        return System.nanoTime();
+    }
+
+    public void stop(Phase phase, long startNanos) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        synchronized (durations) {
+            Long previous = durations.get(phase);
+            durations.put(phase, previous == null ? millis : previous + millis);
+        }
+        STATS.get(phase).record(millis);
+    }
+
+    public void report(CxLoggerAdapter log, Map<String, String> customBuildData) {
+        Map<Phase, Long> snapshot;
+        synchronized (durations) {
+            snapshot = new EnumMap<Phase, Long>(durations);
+        }
+        if (snapshot.isEmpty()) {
+            return;
+        }
+        long total = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        log.info("---------------------------------------Phase timings:-------------------------------------");
+        for (Map.Entry<Phase, Long> entry : snapshot.entrySet()) {
+            log.info(String.format("%-45s %10d ms", entry.getKey().getLabel(), entry.getValue()));
+            customBuildData.put(TIMING_PREFIX + entry.getKey().getKey(), String.valueOf(entry.getValue()));
+        }
+        log.info(String.format("%-45s %10d ms", "Total", total));
+        log.info("------------------------------------------------------------------------------------------");
+        customBuildData.put(TIMING_PREFIX + "total", String.valueOf(total));
+    }
+}
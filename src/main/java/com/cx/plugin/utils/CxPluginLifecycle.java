@@ -0,0 +1,24 @@
+package com.cx.plugin.utils;
+
+import com.cx.plugin.client.CxServerMetadataCache;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Sets up the plugin wide resources that are not owned by a component when the plugin starts, and releases them when
+ * the plugin is disabled or upgraded, so no thread of the old plugin version keeps running.
+ */
+public class CxPluginLifecycle implements InitializingBean, DisposableBean {
+
+    @Override
+    public void afterPropertiesSet() {
+        CxAppender.attach();
+    }
+
+    @Override
+    public void destroy() {
+        CxServerMetadataCache.getInstance().shutdown();
+        CxAppender.detach();
+        CxPhaseTimer.unregisterStats();
+    }
+}
@@ -1,13 +1,19 @@
 package com.cx.plugin.utils;
 
-import com.atlassian.bamboo.security.EncryptionException;
-import com.atlassian.bamboo.security.EncryptionServiceImpl;
+import com.atlassian.config.bootstrap.AtlassianBootstrapManager;
+import com.atlassian.spring.container.ContainerManager;
 import com.cx.plugin.dto.ScanResults;
 import com.cx.restclient.configuration.CxScanConfig;
 
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 /**
  * Created by Galn on 24/10/2017.
  */
@@ -34,7 +40,12 @@ public abstract class CxPluginUtils {
         }
         log.info("Folder exclusions: " + (config.getSastFolderExclusions()));
         log.info("Is synchronous scan: " + config.getSynchronous());
-        log.info("Generate PDF report: " + config.getGeneratePDFReport());
+        log.info("Generate PDF report: " + (configBFF.isPdfReportInBuild() || configBFF.isPdfReportInBackground()) +
+                (configBFF.isPdfReportInBackground() ? " (after the build)" : ""));
+        log.info("Skip scan when sources did not change: " + configBFF.isSkipUnchangedSources());
+        log.info("Reuse results of the same revisions: " + configBFF.isReuseSameRevision());
+        log.info("When the Checkmarx server is unavailable: " + (configBFF.isSkipWhenServerUnavailable() ? "skip the scan" : "fail the build"));
+        log.info("Maximum concurrent scans: " + (configBFF.getMaxConcurrentScans() <= 0 ? "[No Limit]" : configBFF.getMaxConcurrentScans()));
         log.info("CxSAST thresholds enabled: " + config.getSastThresholdsEnabled());
         if (config.getSastThresholdsEnabled()) {
             log.info("CxSAST high threshold: " + (config.getSastHighThreshold() == null ? "[No Threshold]" : config.getSastHighThreshold()));
@@ -47,6 +58,8 @@ public abstract class CxPluginUtils {
             log.info("CxOSA filter patterns: " + config.getOsaFilterPattern());
             log.info("CxOSA archive extract patterns: " + config.getOsaArchiveIncludePatterns());
             log.info("Execute dependency managers 'install packages' command before Scan: " + config.getOsaRunInstall());
+            log.info("Run CxSAST and CxOSA scans in parallel: " + configBFF.isParallelScans());
+            log.info("Fail as soon as one scan breaks the thresholds: " + configBFF.isFailFast());
 
             log.info("CxOSA thresholds enabled: " + config.getOsaThresholdsEnabled());
             if (config.getOsaThresholdsEnabled()) {
@@ -90,40 +103,15 @@ public abstract class CxPluginUtils {
     }
 
     public static String decrypt(String str) {
-        String encStr;
-        if (isEncrypted(str)) {
-            try {
-                encStr = new EncryptionServiceImpl().decrypt(str);
-            } catch (EncryptionException e) {
-                encStr = "";
-            }
-            return encStr;
-        } else {
-            return str;
-        }
+        return CxCredentialService.getInstance().decrypt(str);
     }
 
     public static String encrypt(String password) {
-        String encPass;
-        if (!isEncrypted(password)) {
-            try {
-                encPass = new EncryptionServiceImpl().encrypt(password);
-            } catch (EncryptionException e) {
-                encPass = "";
-            }
-            return encPass;
-        } else {
-            return password;
-        }
+        return CxCredentialService.getInstance().encrypt(password);
     }
 
     public static boolean isEncrypted(String encryptStr) {
-        try {
-            new EncryptionServiceImpl().decrypt(encryptStr);
-        } catch (EncryptionException e) {
-            return false;
-        }
-        return true;
+        return CxCredentialService.getInstance().isEncrypted(encryptStr);
     }
 
     public static Integer resolveInt(String value, Logger log) {
@@ -137,4 +125,48 @@ public abstract class CxPluginUtils {
         }
         return inti;
     }
-}
+
+    /**
+     * Everything besides the sources that decides the results and the verdict of a scan.
+     */
+    public static String resolveScanFingerprint(CxScanConfig config) {
+        return config.getUrl() + "|" + config.getProjectName() + "|" + config.getTeamId() + "|" + config.getTeamPath() +
+                "|" + config.getPresetId() + "|" + config.getSastFolderExclusions() + "|" + config.getSastFilterPattern() +
+                "|" + config.getOsaEnabled() + "|" + config.getEnablePolicyViolations() +
+                "|" + config.getSastThresholdsEnabled() + "|" + config.getSastHighThreshold() + "|" + config.getSastMediumThreshold() + "|" + config.getSastLowThreshold() +
+                "|" + config.getOsaThresholdsEnabled() + "|" + config.getOsaHighThreshold() + "|" + config.getOsaMediumThreshold() + "|" + config.getOsaLowThreshold() +
+                "|" + config.getHideResults();
+    }
+
+    /**
+     * @return a directory under the Bamboo home, created when missing. Only available on the Bamboo server
+     */
+    public static File resolveHomeDir(String relative) throws IOException {
+        AtlassianBootstrapManager bootstrapManager = (AtlassianBootstrapManager) ContainerManager.getComponent("bootstrapManager");
+        File dir = new File(bootstrapManager.getApplicationHome(), relative);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + dir);
+        }
+        return dir;
+    }
+
+    public static String sha256Hex(String value) {
+        return toHex(newSha256().digest(StringUtils.defaultString(value).getBytes(Charset.forName("UTF-8"))));
+    }
+
+    public static MessageDigest newSha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not supported by this JVM", e);
+        }
+    }
+
+    public static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,89 @@
+package com.cx.plugin.utils;
+
+import java.io.*;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import static com.cx.plugin.utils.CxPluginUtils.sha256Hex;
+
+/**
+ * Agent local store of finished scan results, so a build with identical input can reuse them instead of
+ * submitting a new scan. Every entry is a small properties file named after the hash of its key.
+ */
+public class CxScanResultStore {
+
+    private final File dir;
+
+    public CxScanResultStore(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return the stored entry, or null when there is none (or it cannot be read)
+     */
+    public Map<String, String> load(String key) {
+        File file = fileOf(key);
+        if (!file.isFile()) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                properties.load(in);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        Map<String, String> ret = new HashMap<String, String>();
+        for (String name : properties.stringPropertyNames()) {
+            ret.put(name, properties.getProperty(name));
+        }
+        return ret;
+    }
+
+    public void save(String key, Map<String, String> entry) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Failed to create directory: " + dir);
+        }
+        Properties properties = new Properties();
+        properties.putAll(entry);
+
+        File file = fileOf(key);
+        //a unique temporary file, so concurrent builds on the agent saving the same key do not share it
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            OutputStream out = new FileOutputStream(tmp);
+            try {
+                properties.store(out, key);
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new IOException("Failed to write scan result entry: " + file, e);
+        } finally {
+            if (tmp.exists() && !tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+    public File fileOf(String key) {
+        return new File(dir, sha256Hex(key) + ".properties");
+    }
+
+    public File getDir() {
+        return dir;
+    }
+}
@@ -0,0 +1,49 @@
+package com.cx.plugin.utils;
+
+import com.cx.restclient.configuration.CxScanConfig;
+import com.cx.restclient.osa.dto.OSAResults;
+import com.cx.restclient.sast.dto.SASTResults;
+
+/**
+ * Checks vulnerability counts against the thresholds of a task.
+ * <p>
+ * Unlike the client's own threshold check this only looks at the results it is given, so it can judge the results
+ * of one engine while the other is still scanning, or results that were fetched by scan id after the build. Policy
+ * violations are only known to the server and are not checked.
+ */
+public class CxThresholds {
+
+    private CxThresholds() {
+    }
+
+    /**
+     * @param sast the CxSAST results to check, or null to skip them
+     * @param osa  the CxOSA results to check, or null to skip them
+     * @return the exceeded thresholds, or null when no threshold was exceeded
+     */
+    public static String check(CxScanConfig config, SASTResults sast, OSAResults osa) {
+        StringBuilder failures = new StringBuilder();
+        if (sast != null && Boolean.TRUE.equals(config.getSastThresholdsEnabled())) {
+            checkOne(failures, "CxSAST high", sast.getHigh(), config.getSastHighThreshold());
+            checkOne(failures, "CxSAST medium", sast.getMedium(), config.getSastMediumThreshold());
+            checkOne(failures, "CxSAST low", sast.getLow(), config.getSastLowThreshold());
+        }
+        if (osa != null && osa.getResults() != null && Boolean.TRUE.equals(config.getOsaThresholdsEnabled())) {
+            checkOne(failures, "CxOSA high", osa.getResults().getTotalHighVulnerabilities(), config.getOsaHighThreshold());
+            checkOne(failures, "CxOSA medium", osa.getResults().getTotalMediumVulnerabilities(), config.getOsaMediumThreshold());
+            checkOne(failures, "CxOSA low", osa.getResults().getTotalLowVulnerabilities(), config.getOsaLowThreshold());
+        }
+        return failures.length() == 0 ? null : failures.toString();
+    }
+
+    private static void checkOne(StringBuilder failures, String severity, int count, Integer threshold) {
+        if (threshold == null || count <= threshold) {
+            return;
+        }
+        if (failures.length() > 0) {
+            failures.append(", ");
+        }
+        failures.append(severity).append(" severity results are above threshold. Results: ").append(count)
+                .append(". Threshold: ").append(threshold);
+    }
+}
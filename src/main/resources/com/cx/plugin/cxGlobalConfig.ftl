@@ -119,6 +119,8 @@
 
         [@ww.checkbox labelKey="globalDenyProject.label" name="globalDenyProject" descriptionKey="globalDenyProject.description" /]
         [@ww.checkbox labelKey="globalHideResults.label" name="globalHideResults" descriptionKey="globalHideResults.description" toggle='true' /]
+        [@ww.textfield labelKey="globalMaxConcurrentScans.label" name="globalMaxConcurrentScans" descriptionKey="globalMaxConcurrentScans.description" required='false'/]
+        [@ww.checkbox labelKey="globalSkipWhenServerUnavailable.label" name="globalSkipWhenServerUnavailable" descriptionKey="globalSkipWhenServerUnavailable.description" /]
 
     [/@ui.bambooSection]
 [/@ww.form]
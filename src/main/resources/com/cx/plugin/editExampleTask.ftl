@@ -139,7 +139,12 @@
     [/@ui.bambooSection]
 
 
-    [@ww.checkbox labelKey="generatePDFReport.label" name="generatePDFReport" toggle='false' descriptionKey='generatePDFReport.description'/]
+    [@ww.checkbox labelKey="generatePDFReport.label" name="generatePDFReport" toggle='true' descriptionKey='generatePDFReport.description'/]
+    [@ui.bambooSection dependsOn="generatePDFReport" showOn="true"]
+        [@ww.checkbox labelKey="pdfReportInBackground.label" name="pdfReportInBackground" toggle='false' descriptionKey='pdfReportInBackground.description'/]
+    [/@ui.bambooSection]
+    [@ww.checkbox labelKey="skipUnchangedSources.label" name="skipUnchangedSources" toggle='false' descriptionKey='skipUnchangedSources.description'/]
+    [@ww.checkbox labelKey="reuseSameRevisionResults.label" name="reuseSameRevisionResults" toggle='false' descriptionKey='reuseSameRevisionResults.description'/]
 [/@ui.bambooSection]
 
 
@@ -155,6 +160,10 @@
         [@ww.textarea labelKey="cxOsaFilterPatterns.label" name="cxOsaFilterPatterns" descriptionKey="cxOsaFilterPatterns.description" rows="4" cssClass="long-field"/]
         [@ww.textfield labelKey="cxOsaArchiveIncludePatterns.label" name="cxOsaArchiveIncludePatterns" descriptionKey="cxOsaArchiveIncludePatterns.description"/]
         [@ww.checkbox labelKey="cxOsaInstallBeforeScan.label" name="cxOsaInstallBeforeScan" descriptionKey="cxOsaInstallBeforeScan.description" toggle='true' /]
+        [@ww.checkbox labelKey="cxOsaParallelScan.label" name="cxOsaParallelScan" descriptionKey="cxOsaParallelScan.description" toggle='true' /]
+        [@ui.bambooSection dependsOn="cxOsaParallelScan" showOn="true"]
+            [@ww.checkbox labelKey="cxFailFast.label" name="cxFailFast" descriptionKey="cxFailFast.description" toggle='false' /]
+        [/@ui.bambooSection]
     [/@ui.bambooSection]
 [/@ui.bambooSection]
 
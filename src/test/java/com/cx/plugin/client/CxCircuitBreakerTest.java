@@ -0,0 +1,115 @@
+package com.cx.plugin.client;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CxCircuitBreakerTest {
+
+    private static final long SHORT_OPEN_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        CxCircuitBreaker.Circuit circuit = new CxCircuitBreaker.Circuit("http://cx");
+
+        for (int i = 1; i < CxCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            assertFalse(circuit.onFailure());
+            assertTrue(circuit.allowRequest());
+        }
+        assertTrue(circuit.onFailure());
+
+        assertEquals(CxCircuitBreaker.State.OPEN, circuit.getState());
+        assertFalse(circuit.allowRequest());
+        assertTrue(circuit.isRejecting());
+        assertTrue(circuit.getSecondsUntilProbe() > 0);
+    }
+
+    @Test
+    public void successResetsTheFailureCount() {
+        CxCircuitBreaker.Circuit circuit = new CxCircuitBreaker.Circuit("http://cx");
+
+        for (int i = 1; i < CxCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            circuit.onFailure();
+        }
+        assertFalse(circuit.onSuccess());
+        assertEquals(0, circuit.getFailures());
+        assertFalse(circuit.onFailure());
+
+        assertEquals(CxCircuitBreaker.State.CLOSED, circuit.getState());
+    }
+
+    @Test
+    public void letsOneProbeThroughAfterTheOpenPeriod() throws InterruptedException {
+        CxCircuitBreaker.Circuit circuit = openCircuit();
+
+        assertFalse(circuit.allowRequest());
+        waitOpenPeriod();
+
+        assertFalse("waiting for the probe must not make a build the probe", circuit.isRejecting());
+        assertEquals(CxCircuitBreaker.State.OPEN, circuit.getState());
+        assertTrue(circuit.allowRequest());
+        assertEquals(CxCircuitBreaker.State.HALF_OPEN, circuit.getState());
+        assertFalse(circuit.allowRequest());
+        assertTrue(circuit.isRejecting());
+    }
+
+    @Test
+    public void successfulProbeClosesTheCircuit() throws InterruptedException {
+        CxCircuitBreaker.Circuit circuit = openCircuit();
+        waitOpenPeriod();
+        assertTrue(circuit.allowRequest());
+
+        assertTrue(circuit.onSuccess());
+
+        assertEquals(CxCircuitBreaker.State.CLOSED, circuit.getState());
+        assertTrue(circuit.allowRequest());
+        assertFalse(circuit.isRejecting());
+    }
+
+    @Test
+    public void failedProbeOpensTheCircuitAgain() throws InterruptedException {
+        CxCircuitBreaker.Circuit circuit = openCircuit();
+        waitOpenPeriod();
+        assertTrue(circuit.allowRequest());
+
+        assertTrue(circuit.onFailure());
+
+        assertEquals(CxCircuitBreaker.State.OPEN, circuit.getState());
+        assertFalse(circuit.allowRequest());
+    }
+
+    @Test
+    public void lostProbeIsReplacedAfterTheOpenPeriod() throws InterruptedException {
+        CxCircuitBreaker.Circuit circuit = openCircuit();
+        waitOpenPeriod();
+        assertTrue(circuit.allowRequest());
+
+        waitOpenPeriod();
+
+        assertTrue(circuit.allowRequest());
+        assertEquals(CxCircuitBreaker.State.HALF_OPEN, circuit.getState());
+    }
+
+    @Test
+    public void serversShareACircuitRegardlessOfTrailingSlashAndCase() {
+        CxCircuitBreaker breaker = CxCircuitBreaker.getInstance();
+
+        assertSame(breaker.circuit("https://Cx.example.com/"), breaker.circuit("https://cx.example.com"));
+        assertNotSame(breaker.circuit("https://cx.example.com"), breaker.circuit("https://cx2.example.com"));
+    }
+
+    private static CxCircuitBreaker.Circuit openCircuit() {
+        CxCircuitBreaker.Circuit circuit = new CxCircuitBreaker.Circuit("http://cx", SHORT_OPEN_NANOS);
+        for (int i = 0; i < CxCircuitBreaker.FAILURE_THRESHOLD; i++) {
+            circuit.onFailure();
+        }
+        assertEquals(CxCircuitBreaker.State.OPEN, circuit.getState());
+        return circuit;
+    }
+
+    private static void waitOpenPeriod() throws InterruptedException {
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(SHORT_OPEN_NANOS) + 20);
+    }
+}
@@ -0,0 +1,179 @@
+package com.cx.plugin.client;
+
+import com.cx.plugin.utils.CxLoggerAdapter;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class CxScanAdmissionTest {
+
+    private static final int LIMIT = 1;
+
+    private final CxScanAdmission admission = new CxScanAdmission();
+    private final BlockingQueue<String> lines = new LinkedBlockingQueue<String>();
+    private final CxLoggerAdapter log = new CxLoggerAdapter(null) {
+        @Override
+        public void info(String s) {
+            lines.add(s);
+        }
+
+        @Override
+        public void warn(String s) {
+            lines.add(s);
+        }
+    };
+    private final List<String> admitted = Collections.synchronizedList(new ArrayList<String>());
+    private final List<Thread> threads = new ArrayList<Thread>();
+
+    @After
+    public void stopThreads() {
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+    }
+
+    @Test
+    public void noLimitNeverWaits() throws Exception {
+        CxScanAdmission.Permit first = admission.acquire("team", "PLAN-JOB-1", 0, log);
+        CxScanAdmission.Permit second = admission.acquire("team", "PLAN-JOB-2", 0, log);
+
+        first.release();
+        second.release();
+        assertTrue(lines.isEmpty());
+    }
+
+    @Test
+    public void teamsTakeTurns() throws Exception {
+        CxScanAdmission.Permit running = admission.acquire("A", "A-0", LIMIT, log);
+        startWaiter("A", "A-1");
+        startWaiter("A", "A-2");
+        startWaiter("A", "A-3");
+        startWaiter("B", "B-1");
+
+        running.release();
+        joinWaiters();
+
+        assertEquals(asList("A-1", "B-1", "A-2", "A-3"), admitted);
+    }
+
+    @Test
+    public void waitersLogTheirRoundRobinPosition() throws Exception {
+        CxScanAdmission.Permit running = admission.acquire("A", "A-0", LIMIT, log);
+
+        assertTrue(startWaiter("A", "A-1").endsWith("queue position 1"));
+        assertTrue(startWaiter("A", "A-2").endsWith("queue position 2"));
+        //served after A-1, before A-2
+        assertTrue(startWaiter("B", "B-1").endsWith("queue position 2"));
+        //A-1, B-1, A-2, then the first build of C
+        assertTrue(startWaiter("C", "C-1").endsWith("queue position 3"));
+
+        running.release();
+        joinWaiters();
+    }
+
+    @Test
+    public void releasedPermitAdmitsTheNextBuildOnce() throws Exception {
+        CxScanAdmission.Permit running = admission.acquire("A", "A-0", LIMIT, log);
+        startWaiter("B", "B-1");
+
+        running.release();
+        running.release();
+        joinWaiters();
+
+        assertEquals(asList("B-1"), admitted);
+        //the second release did not free a slot that is not there
+        CxScanAdmission.Permit next = admission.acquire("C", "C-1", LIMIT, log);
+        startWaiter("C", "C-2");
+        next.release();
+        joinWaiters();
+    }
+
+    @Test
+    public void interruptedWaiterLeavesTheQueue() throws Exception {
+        CxScanAdmission.Permit running = admission.acquire("A", "A-0", LIMIT, log);
+        startWaiter("A", "A-1");
+        Thread leaving = threads.get(0);
+        startWaiter("B", "B-1");
+
+        leaving.interrupt();
+        leaving.join(TimeUnit.SECONDS.toMillis(5));
+        running.release();
+        threads.get(1).join(TimeUnit.SECONDS.toMillis(5));
+
+        assertEquals(asList("B-1"), admitted);
+    }
+
+    @Test
+    public void serverWaitEndsAtTheTimeout() throws Exception {
+        CxScanLookup lookup = mock(CxScanLookup.class);
+        when(lookup.countActiveScans(anyString())).thenReturn(LIMIT);
+
+        try {
+            admission.awaitServerCapacity(lookup, "Bamboo", LIMIT, 50, log);
+            fail("the server had no free slot");
+        } catch (TimeoutException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("No scan slot on the Checkmarx server within the scan timeout"));
+        }
+        assertTrue(lines.poll().startsWith("Waiting for a scan slot"));
+    }
+
+    @Test
+    public void serverWaitEndsOnceASlotIsFree() throws Exception {
+        CxScanLookup lookup = mock(CxScanLookup.class);
+        when(lookup.countActiveScans(anyString())).thenReturn(LIMIT - 1);
+
+        admission.awaitServerCapacity(lookup, "Bamboo", LIMIT, 50, log);
+
+        assertTrue(lines.isEmpty());
+    }
+
+    /**
+     * Starts a build that asks for a slot and releases it right away once admitted.
+     *
+     * @return the line the build logged when it started waiting
+     */
+    private String startWaiter(final String team, final String buildResultKey) throws InterruptedException {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    CxScanAdmission.Permit permit = admission.acquire(team, buildResultKey, LIMIT, log);
+                    admitted.add(buildResultKey);
+                    permit.release();
+                } catch (InterruptedException e) {
+                    //left the queue
+                }
+            }
+        }, buildResultKey);
+        threads.add(thread);
+        thread.start();
+        String line = lines.poll(5, TimeUnit.SECONDS);
+        assertNotNull("no waiting line logged by " + buildResultKey, line);
+        assertTrue(line, line.startsWith("Waiting for a scan slot"));
+        return line;
+    }
+
+    private void joinWaiters() throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse(thread.getName() + " was not admitted", thread.isAlive());
+        }
+    }
+
+    private static List<String> asList(String... values) {
+        List<String> ret = new ArrayList<String>();
+        Collections.addAll(ret, values);
+        return ret;
+    }
+}
@@ -0,0 +1,118 @@
+package com.cx.plugin.results;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CxTrendStoreTest {
+
+    @Test
+    public void recordsRoundTripAgainstThePreviousPoint() {
+        CxTrendStore.Point first = point(1, 1500000000L, 3, 10, 20, 30, 1, 2, 3, 125);
+        CxTrendStore.Point second = point(2, 1500000600L, 1, 4, 25, 0, 0, 0, 0, 90);
+
+        CxTrendStore.Point decodedFirst = roundTrip(null, first);
+        CxTrendStore.Point decodedSecond = roundTrip(decodedFirst, second);
+
+        assertPoint(first, decodedFirst);
+        assertPoint(second, decodedSecond);
+    }
+
+    @Test
+    public void smallDifferencesTakeOneBytePerField() {
+        CxTrendStore.Point previous = point(41, 1500000000L, 1, 10, 10, 10, 0, 0, 0, 60);
+        CxTrendStore.Point next = point(42, 1500000060L, 1, 9, 11, 10, 0, 0, 0, 61);
+
+        byte[] record = encode(previous, next);
+
+        //ten fields, every difference (including the negative one) and the duration fit into 7 bits
+        assertEquals(10, record.length);
+    }
+
+    @Test
+    public void extremeValuesSurviveTheZigzagEncoding() {
+        CxTrendStore.Point previous = point(Integer.MAX_VALUE, Long.MAX_VALUE / 2, 7, Integer.MAX_VALUE, 0, 0, 0, 0, 0, 0);
+        CxTrendStore.Point next = point(1, 0, 0, Integer.MIN_VALUE, Integer.MAX_VALUE, -1, 0, 0, 0, Integer.MAX_VALUE);
+
+        assertPoint(next, roundTrip(previous, next));
+    }
+
+    @Test
+    public void negativeDurationIsStoredAsZero() {
+        CxTrendStore.Point decoded = roundTrip(null, point(1, 0, 0, 0, 0, 0, 0, 0, 0, -5));
+
+        assertEquals(0, decoded.durationSeconds);
+    }
+
+    @Test
+    public void truncatedRecordIsCorrupt() {
+        byte[] record = encode(null, point(300, 1500000000L, 3, 1000, 20, 30, 1, 2, 3, 125));
+
+        assertNull(CxTrendStore.decodeRecord(record, record.length - 1, null));
+    }
+
+    @Test
+    public void recordWithTrailingBytesIsCorrupt() {
+        byte[] record = encode(null, point(1, 1, 1, 1, 1, 1, 1, 1, 1, 1));
+        byte[] padded = Arrays.copyOf(record, record.length + 1);
+
+        assertNull(CxTrendStore.decodeRecord(padded, padded.length, null));
+    }
+
+    @Test
+    public void unterminatedVarintIsCorrupt() {
+        byte[] record = new byte[12];
+        Arrays.fill(record, (byte) 0xFF);
+
+        assertNull(CxTrendStore.decodeRecord(record, record.length, null));
+    }
+
+    @Test
+    public void pointsAreSortedByBuildNumberAndTheLatestRecordWins() {
+        CxTrendStore.Point third = point(3, 30, 0, 3, 0, 0, 0, 0, 0, 0);
+        CxTrendStore.Point first = point(1, 10, 0, 1, 0, 0, 0, 0, 0, 0);
+        CxTrendStore.Point rerun = point(3, 40, 0, 5, 0, 0, 0, 0, 0, 0);
+
+        List<CxTrendStore.Point> points = CxTrendStore.byBuildNumber(Arrays.asList(third, first, rerun));
+
+        assertEquals(2, points.size());
+        assertSame(first, points.get(0));
+        assertSame(rerun, points.get(1));
+    }
+
+    private static CxTrendStore.Point point(int buildNumber, long timeSeconds, int flags, int sastHigh, int sastMedium,
+                                            int sastLow, int osaHigh, int osaMedium, int osaLow, int durationSeconds) {
+        return new CxTrendStore.Point(buildNumber, timeSeconds, flags, sastHigh, sastMedium, sastLow,
+                osaHigh, osaMedium, osaLow, durationSeconds);
+    }
+
+    private static byte[] encode(CxTrendStore.Point previous, CxTrendStore.Point point) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CxTrendStore.encode(out, previous, point);
+        return out.toByteArray();
+    }
+
+    private static CxTrendStore.Point roundTrip(CxTrendStore.Point previous, CxTrendStore.Point point) {
+        byte[] record = encode(previous, point);
+        CxTrendStore.Point decoded = CxTrendStore.decodeRecord(record, record.length, previous);
+        assertNotNull(decoded);
+        return decoded;
+    }
+
+    private static void assertPoint(CxTrendStore.Point expected, CxTrendStore.Point actual) {
+        assertEquals(expected.buildNumber, actual.buildNumber);
+        assertEquals(expected.timeSeconds, actual.timeSeconds);
+        assertEquals(expected.flags, actual.flags);
+        assertEquals(expected.sastHigh, actual.sastHigh);
+        assertEquals(expected.sastMedium, actual.sastMedium);
+        assertEquals(expected.sastLow, actual.sastLow);
+        assertEquals(expected.osaHigh, actual.osaHigh);
+        assertEquals(expected.osaMedium, actual.osaMedium);
+        assertEquals(expected.osaLow, actual.osaLow);
+        assertEquals(expected.durationSeconds, actual.durationSeconds);
+    }
+}
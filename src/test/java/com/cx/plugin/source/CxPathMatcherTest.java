@@ -0,0 +1,107 @@
+package com.cx.plugin.source;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class CxPathMatcherTest {
+
+    @Test
+    public void extensionPatternsMatchInAnyDirectory() {
+        CxPathMatcher matcher = matcher("**/*.class", "**/*.min.js");
+
+        assertTrue(matcher.matchesFile("Main.class"));
+        assertTrue(matcher.matchesFile("target/classes/com/cx/Main.class"));
+        assertTrue(matcher.matchesFile("web/lib/jquery.min.js"));
+        assertFalse(matcher.matchesFile("web/app.js"));
+        assertFalse(matcher.matchesFile("src/Main.java"));
+    }
+
+    @Test
+    public void fileNamePatternsMatchTheWholeName() {
+        CxPathMatcher matcher = matcher("**/Thumbs.db");
+
+        assertTrue(matcher.matchesFile("Thumbs.db"));
+        assertTrue(matcher.matchesFile("images/icons/Thumbs.db"));
+        assertFalse(matcher.matchesFile("images/MyThumbs.db"));
+    }
+
+    @Test
+    public void directoryNamePatternsMatchEveryFileBeneath() {
+        CxPathMatcher matcher = matcher("**/node_modules/**/*");
+
+        assertTrue(matcher.matchesFile("node_modules/lib/index.js"));
+        assertTrue(matcher.matchesFile("web/node_modules/index.js"));
+        assertFalse(matcher.matchesFile("web/node_modules.js"));
+        assertTrue(matcher.matchesDirectory("web/node_modules", "node_modules"));
+        assertFalse(matcher.matchesDirectory("web", "web"));
+    }
+
+    @Test
+    public void directoryPrefixPatternsMatchFromTheRoot() {
+        CxPathMatcher matcher = matcher("build/generated/**");
+
+        assertTrue(matcher.matchesFile("build/generated/Parser.java"));
+        assertTrue(matcher.matchesDirectory("build/generated", "generated"));
+        assertFalse(matcher.matchesFile("src/build/generated/Parser.java"));
+        assertFalse(matcher.matchesDirectory("build", "build"));
+    }
+
+    @Test
+    public void otherPatternsKeepWildcardsWithinOneSegment() {
+        CxPathMatcher matcher = matcher("src/*/Test?.java");
+
+        assertTrue(matcher.matchesFile("src/main/Test1.java"));
+        assertFalse(matcher.matchesFile("src/main/java/Test1.java"));
+        assertFalse(matcher.matchesFile("src/main/Test12.java"));
+    }
+
+    @Test
+    public void matchingIsCaseSensitive() {
+        CxPathMatcher matcher = matcher("**/*.class", "**/Thumbs.db", "**/bin/**/*", "Docs/**", "src/*.TXT");
+
+        assertFalse(matcher.matchesFile("Main.CLASS"));
+        assertFalse(matcher.matchesFile("images/thumbs.db"));
+        assertFalse(matcher.matchesFile("Bin/tool.exe"));
+        assertFalse(matcher.matchesDirectory("Bin", "Bin"));
+        assertFalse(matcher.matchesFile("docs/index.html"));
+        assertFalse(matcher.matchesFile("src/readme.txt"));
+        assertTrue(matcher.matchesFile("src/README.TXT"));
+    }
+
+    @Test
+    public void matchAllPatterns() {
+        assertTrue(matcher("**/*").matchesFile("any/path/file.txt"));
+        assertTrue(matcher("**").matchesDirectory("any", "any"));
+    }
+
+    @Test
+    public void emptyPatternListMatchesNothing() {
+        CxPathMatcher matcher = new CxPathMatcher(Collections.<String>emptyList());
+
+        assertFalse(matcher.matchesFile("file.txt"));
+        assertFalse(matcher.matchesDirectory("dir", "dir"));
+    }
+
+    @Test
+    public void regexCharactersInPatternsAreLiteral() {
+        CxPathMatcher matcher = matcher("lib/jquery-1.2+(min).js");
+
+        assertTrue(matcher.matchesFile("lib/jquery-1.2+(min).js"));
+        assertFalse(matcher.matchesFile("lib/jquery-1x2+(min).js"));
+    }
+
+    @Test
+    public void toRegexTranslatesAntWildcards() {
+        assertEquals("(?:.*/)?[^/]*\\.java", CxPathMatcher.toRegex("**/*.java"));
+        assertEquals("a/.*", CxPathMatcher.toRegex("a/**"));
+        assertEquals("a[^/]c", CxPathMatcher.toRegex("a?c"));
+    }
+
+    private static CxPathMatcher matcher(String... patterns) {
+        return new CxPathMatcher(Arrays.asList(patterns));
+    }
+}
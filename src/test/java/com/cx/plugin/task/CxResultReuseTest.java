@@ -0,0 +1,85 @@
+package com.cx.plugin.task;
+
+import com.cx.restclient.configuration.CxScanConfig;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CxResultReuseTest {
+
+    private static final File WORK_DIR = new File(System.getProperty("java.io.tmpdir"), "cx-reuse-test/work");
+
+    @Test
+    public void keyDoesNotDependOnTheOrderOfTheRevisions() {
+        String key = revisionKey(config(), "repo1:abc", "repo2:def");
+
+        assertEquals(key, revisionKey(config(), "repo2:def", "repo1:abc"));
+    }
+
+    @Test
+    public void keyIsSharedByBuildsOfOtherPlans() {
+        CxScanConfig config = config();
+        List<String> revisions = Collections.singletonList("repo1:abc");
+
+        String key = new CxResultReuse(config, WORK_DIR, "PLAN-JOB1", "PLAN-JOB1-1", revisions, null).revisionEntryKey();
+        String other = new CxResultReuse(config, WORK_DIR, "OTHER-JOB1", "OTHER-JOB1-7", revisions, null).revisionEntryKey();
+
+        assertEquals(key, other);
+    }
+
+    @Test
+    public void keyChangesWithTheRevisions() {
+        assertFalse(revisionKey(config(), "repo1:abc").equals(revisionKey(config(), "repo1:abd")));
+        assertFalse(revisionKey(config(), "repo1:abc").equals(revisionKey(config(), "repo1:abc", "repo2:def")));
+    }
+
+    @Test
+    public void keyChangesWithTheScanSettings() {
+        String key = revisionKey(config(), "repo1:abc");
+
+        CxScanConfig otherProject = config();
+        otherProject.setProjectName("other");
+        CxScanConfig otherPreset = config();
+        otherPreset.setPresetId(2);
+        CxScanConfig otherFilter = config();
+        otherFilter.setSastFilterPattern("!**/*.js");
+        CxScanConfig incremental = config();
+        incremental.setIncremental(true);
+
+        assertFalse(key.equals(revisionKey(otherProject, "repo1:abc")));
+        assertFalse(key.equals(revisionKey(otherPreset, "repo1:abc")));
+        assertFalse(key.equals(revisionKey(otherFilter, "repo1:abc")));
+        assertFalse(key.equals(revisionKey(incremental, "repo1:abc")));
+    }
+
+    @Test
+    public void keyDoesNotContainTheSettingsInClear() {
+        String key = revisionKey(config(), "repo1:abc");
+
+        assertTrue(key.startsWith("revision:[repo1:abc]|"));
+        assertFalse(key.contains("project"));
+        assertFalse(key.contains("https://cx.example.com"));
+    }
+
+    private static String revisionKey(CxScanConfig config, String... revisions) {
+        return new CxResultReuse(config, WORK_DIR, "PLAN-JOB1", "PLAN-JOB1-1", Arrays.asList(revisions), null).revisionEntryKey();
+    }
+
+    private static CxScanConfig config() {
+        CxScanConfig config = new CxScanConfig();
+        config.setUrl("https://cx.example.com");
+        config.setProjectName("project");
+        config.setTeamPath("\\CxServer\\SP\\Company");
+        config.setTeamId("1");
+        config.setPresetId(1);
+        config.setSastFolderExclusions("node_modules");
+        config.setSastFilterPattern("!**/*.class");
+        config.setIncremental(false);
+        return config;
+    }
+}
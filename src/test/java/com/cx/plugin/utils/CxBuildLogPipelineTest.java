@@ -0,0 +1,158 @@
+package com.cx.plugin.utils;
+
+import com.atlassian.bamboo.build.logger.BuildLogger;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class CxBuildLogPipelineTest {
+
+    private static final int CAPACITY = 8192;
+
+    private final BuildLogger buildLogger = mock(BuildLogger.class);
+
+    @Test
+    public void linesAreWrittenInOrderWhenClosed() {
+        CxBuildLogPipeline pipeline = new CxBuildLogPipeline(buildLogger);
+        Exception failure = new Exception("failure");
+
+        pipeline.info("first");
+        pipeline.error("second", failure);
+        pipeline.error("third", null);
+        pipeline.info("fourth");
+        pipeline.close();
+
+        InOrder inOrder = inOrder(buildLogger);
+        inOrder.verify(buildLogger).addBuildLogEntry("first");
+        inOrder.verify(buildLogger).addErrorLogEntry("second", failure);
+        inOrder.verify(buildLogger).addErrorLogEntry("third");
+        inOrder.verify(buildLogger).addBuildLogEntry("fourth");
+        assertEquals(0, pipeline.getDropped());
+    }
+
+    @Test
+    public void ringWrapsAroundWithoutLosingLines() {
+        CxBuildLogPipeline pipeline = new CxBuildLogPipeline(buildLogger);
+        int count = CAPACITY * 3 + 17;
+
+        for (int i = 0; i < count; i++) {
+            pipeline.info("line " + i);
+        }
+        pipeline.close();
+
+        List<String> written = writtenLines(count);
+        for (int i = 0; i < count; i++) {
+            assertEquals("line " + i, written.get(i));
+        }
+    }
+
+    @Test
+    public void linesOfConcurrentProducersAreAllWritten() throws InterruptedException {
+        final CxBuildLogPipeline pipeline = new CxBuildLogPipeline(buildLogger);
+        final int producers = 4;
+        final int perProducer = 5000;
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perProducer; i++) {
+                        pipeline.info(producer + ":" + i);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        pipeline.close();
+
+        //a dropped line is only possible when the build logger stalls, and is then reported in one extra line
+        long dropped = pipeline.getDropped();
+        List<String> written = writtenLines((int) (producers * perProducer - dropped + (dropped > 0 ? 1 : 0)));
+        Set<String> distinct = new HashSet<String>(written);
+        assertEquals(written.size(), distinct.size());
+        //every producer's lines keep their order
+        int[] next = new int[producers];
+        for (String line : written) {
+            String[] parts = line.split(":");
+            if (parts.length != 2) {
+                continue;
+            }
+            int producer = Integer.parseInt(parts[0]);
+            int index = Integer.parseInt(parts[1]);
+            assertTrue(line, index >= next[producer]);
+            next[producer] = index + 1;
+        }
+    }
+
+    @Test
+    public void linesThatDoNotFitAreDroppedAndCounted() throws InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        when(buildLogger.addBuildLogEntry(anyString())).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(InvocationOnMock invocation) throws Throwable {
+                blocked.countDown();
+                unblock.await();
+                return null;
+            }
+        });
+        CxBuildLogPipeline pipeline = new CxBuildLogPipeline(buildLogger);
+
+        pipeline.info("blocks the drain thread");
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        //the line being written still holds its slot
+        int fitting = CAPACITY - 1;
+        for (int i = 0; i < fitting + 3; i++) {
+            pipeline.info("line " + i);
+        }
+        assertEquals(3, pipeline.getDropped());
+        unblock.countDown();
+        pipeline.close();
+
+        List<String> written = writtenLines(1 + fitting + 1);
+        assertEquals("line " + (fitting - 1), written.get(fitting));
+        assertEquals("3 Checkmarx log lines were dropped because the build log could not keep up", written.get(fitting + 1));
+    }
+
+    @Test
+    public void linesAfterCloseAreWrittenDirectly() {
+        CxBuildLogPipeline pipeline = new CxBuildLogPipeline(buildLogger);
+        pipeline.close();
+        pipeline.close();
+
+        pipeline.info("late");
+
+        verify(buildLogger).addBuildLogEntry("late");
+    }
+
+    private List<String> writtenLines(int expected) {
+        ArgumentCaptor<String> captor = ArgumentCaptor.forClass(String.class);
+        verify(buildLogger, times(expected)).addBuildLogEntry(captor.capture());
+        return captor.getAllValues();
+    }
+}